@@ -0,0 +1,156 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code BenchmarkRunner} class is a small benchmark harness. Each benchmark runs a number of
+ * warm-up iterations and then a number of measured iterations; every iteration calls the
+ * benchmark repeatedly until a minimum time has passed and reports the average time and the
+ * bytes allocated per operation. Console output is discarded while a benchmark runs, so the
+ * messages printed by the code under test do not distort the results.
+ */
+public class BenchmarkRunner {
+    private static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final PrintStream out;
+    private final List<String> filters;
+
+    /**
+     * A piece of work to be measured.
+     */
+    @FunctionalInterface
+    public interface Benchmark {
+        /**
+         * Performs the work once.
+         *
+         * @return the number of operations performed
+         * @throws Exception if the work fails
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Constructor that initializes the harness.
+     *
+     * @param warmupIterations the number of iterations run before measuring
+     * @param measurementIterations the number of measured iterations
+     * @param iterationMillis the minimum duration of an iteration in milliseconds
+     * @param filters only benchmarks whose name contains one of these strings are run; all
+     *                benchmarks are run when the list is empty
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis,
+                           List<String> filters) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.out = System.out;
+        this.filters = new ArrayList<>(filters);
+    }
+
+    /**
+     * Keeps a result alive so that the work producing it cannot be optimized away.
+     *
+     * @param value the value to be kept
+     */
+    public static void consume(Object value) {
+        sink = value;
+    }
+
+    /**
+     * Prints the header of the result table.
+     */
+    public void printHeader() {
+        out.printf("%-36s %10s %14s %14s %12s%n", "Benchmark", "Size", "ns/op", "ops/s", "B/op");
+    }
+
+    /**
+     * Runs a benchmark and prints its result, unless it is excluded by the filters.
+     *
+     * @param name the name of the benchmark
+     * @param size the data size the benchmark was set up with
+     * @param benchmark the work to be measured
+     */
+    public void run(String name, long size, Benchmark benchmark) {
+        if (!isSelected(name)) {
+            return;
+        }
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(benchmark);
+            }
+
+            double nanosPerOp = 0;
+            double bytesPerOp = 0;
+            for (int i = 0; i < measurementIterations; i++) {
+                double[] result = iterate(benchmark);
+                nanosPerOp += result[0] / measurementIterations;
+                bytesPerOp += result[1] / measurementIterations;
+            }
+
+            out.printf("%-36s %10d %14.1f %14.0f %12.1f%n", name, size, nanosPerOp,
+                    1e9 / nanosPerOp, bytesPerOp);
+        } catch (Exception e) {
+            out.printf("%-36s %10d failed: %s%n", name, size, e);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Checks whether a benchmark is selected by the filters.
+     *
+     * @param name the name of the benchmark
+     * @return {@code true} if the benchmark should be run
+     */
+    public boolean isSelected(String name) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs one iteration of a benchmark.
+     *
+     * @return the nanoseconds and the bytes allocated per operation
+     */
+    private double[] iterate(Benchmark benchmark) throws Exception {
+        long operations = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operations += benchmark.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        operations = Math.max(operations, 1);
+        return new double[] {(double) elapsed / operations, (double) allocated / operations};
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the current thread, or zero if the JVM does
+     * not report it.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@code HistoryRetentionSimulation} class measures the heap used by the history of a busy
+ * ride over a simulated week: with a retention limit that spills older visitors to disk, with
+ * the same limit and a {@link VisitorInterner}, and with the whole history in memory. Every day
+ * brings new guests who ride several times, boarding from the queue in cycles of a full train.
+ * The heap in use includes the interner. The report shows the heap in use after each day, and how
+ * long a ticket check takes at the end of the week for a ticket in memory, a spilled ticket, and
+ * a ticket that never rode.
+ */
+public class HistoryRetentionSimulation {
+    private static final int DAYS = 7;
+    private static final int RIDERS_PER_DAY = 200_000;
+    private static final int GUESTS_PER_DAY = 50_000;
+    private static final int SEATS = 24;
+    private static final int RETENTION = 50_000;
+    private static final int CHECKS = 2_000;
+
+    /**
+     * Runs the week with and without retention and prints the report.
+     *
+     * @param out the stream the report is printed to
+     * @throws IOException if the spill file cannot be created
+     */
+    public static void report(PrintStream out) throws IOException {
+        out.printf("%nHistory retention: %d days of %d riders, keeping %d visitors in memory%n",
+                DAYS, RIDERS_PER_DAY, RETENTION);
+        out.printf("%-10s %s%n", "History", "Heap in use after each day (MB)");
+
+        File spillFile = File.createTempFile("ride-history-spill", ".csv");
+        spillFile.deleteOnExit();
+        try {
+            Ride retained = simulate(out, "retained", spillFile.getPath(), null);
+            printChecks(out, retained);
+            out.printf("%-10s spilled %d visitors in %d segments, %.1f MB on disk%n", "",
+                    retained.getSpilledHistory().getNumberOfVisitors(),
+                    retained.getSpilledHistory().getNumberOfSegments(), spillFile.length() / 1e6);
+            retained = null;
+            Ride interned = simulate(out, "interned", spillFile.getPath(), new VisitorInterner());
+            printChecks(out, interned);
+            out.printf("%-10s interner holds %d visitors, shared %d repeat rides%n", "",
+                    interned.getInterner().getNumberOfVisitors(), interned.getInterner().getSharedCount());
+            interned = null;
+            Ride full = simulate(out, "memory", null, null);
+            printChecks(out, full);
+        } finally {
+            spillFile.delete();
+        }
+    }
+
+    /**
+     * Runs the week on one ride and prints the heap in use after each day.
+     */
+    private static Ride simulate(PrintStream out, String name, String spillFilePath, VisitorInterner interner) {
+        long baseline = usedHeap();
+        Ride ride = new Ride("Roller Coaster", 0, new Employee("Operator", 30, "555-000-0000", 1000.0, true));
+        ride.setMaxRider(SEATS);
+        ride.setInterner(interner);
+        if (spillFilePath != null) {
+            ride.setHistoryRetention(RETENTION, spillFilePath, true);
+        }
+
+        Random random = new Random(21);
+        List<Visitor> train = new ArrayList<>(SEATS);
+        out.printf("%-10s", name);
+        for (int day = 0; day < DAYS; day++) {
+            for (int rider = 0; rider < RIDERS_PER_DAY; rider++) {
+                int guest = day * GUESTS_PER_DAY + random.nextInt(GUESTS_PER_DAY);
+                train.add(new Visitor("Guest " + guest, 18 + guest % 60, "555-" + (100 + guest % 900) + "-0000",
+                        "TICKET" + guest, "Roller Coaster"));
+                if (train.size() == SEATS) {
+                    ride.addVisitorsToQueue(train);
+                    ride.runOneCycle();
+                    train.clear();
+                }
+            }
+            out.printf(" %7.1f", (usedHeap() - baseline) / 1e6);
+        }
+        out.println();
+        return ride;
+    }
+
+    /**
+     * Times ticket checks at the end of the week.
+     */
+    private static void printChecks(PrintStream out, Ride ride) {
+        int lastDay = (DAYS - 1) * GUESTS_PER_DAY;
+        out.printf("%-10s ticket check: today %.1f us, first day %.1f us, never rode %.1f us%n", "",
+                timeChecks(ride, lastDay), timeChecks(ride, 0), timeChecks(ride, DAYS * GUESTS_PER_DAY));
+    }
+
+    /**
+     * Checks tickets of guests from a given number on, once to warm up and once timed, and returns
+     * the mean time per check in microseconds.
+     */
+    private static double timeChecks(Ride ride, int firstGuest) {
+        String[] tickets = new String[CHECKS];
+        for (int i = 0; i < CHECKS; i++) {
+            tickets[i] = "TICKET" + (firstGuest + i * 17 % GUESTS_PER_DAY);
+        }
+
+        long elapsed = 0;
+        for (int round = 0; round < 2; round++) {
+            int found = 0;
+            long start = System.nanoTime();
+            for (String ticketId : tickets) {
+                if (ride.checkTicketFromHistory(ticketId)) {
+                    found++;
+                }
+            }
+            elapsed = System.nanoTime() - start;
+            BenchmarkRunner.consume(found);
+        }
+        return elapsed / 1e3 / CHECKS;
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 2; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/**
+ * The {@code LegacyRideHistoryCsv} class keeps the CSV export and import that {@link Ride} used
+ * before {@link RideHistoryCsv}: a {@link FileWriter} flushed after every row, and a
+ * {@link Scanner} whose lines are split with {@code String.split}. It exists only so that the
+ * benchmarks can compare the two.
+ */
+final class LegacyRideHistoryCsv {
+    private LegacyRideHistoryCsv() {
+    }
+
+    /**
+     * Writes the visitors one formatted row at a time, flushing the writer after every row.
+     *
+     * @param filePath the path to the file to write
+     * @param visitors the visitors to be written
+     * @throws IOException if the file cannot be written
+     */
+    static void write(String filePath, Iterable<Visitor> visitors) throws IOException {
+        try (FileWriter writer = new FileWriter(filePath)) {
+            for (Visitor visitor : visitors) {
+                String msg = String.format("%s,%d,%s,%s,%s",
+                        visitor.getName(), visitor.getAge(), visitor.getPhoneNumber(),
+                        visitor.getTicketId(), visitor.getFavoriteAttraction()
+                );
+
+                writer.write(msg + System.lineSeparator());
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Reads the visitors line by line, skipping blank lines and lines that are not split into
+     * exactly five fields.
+     *
+     * @param filePath the path to the file to read
+     * @param consumer the consumer that receives each visitor read from the file
+     * @throws IOException if the file cannot be opened
+     */
+    static void read(String filePath, Consumer<Visitor> consumer) throws IOException {
+        try (Scanner sc = new Scanner(new File(filePath))) {
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine();
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                String[] parts = line.trim().split(",");
+                if (parts.length == 5) {
+                    consumer.accept(new Visitor(parts[0], Integer.parseInt(parts[1]), parts[2], parts[3],
+                            parts[4]));
+                }
+            }
+        }
+    }
+}
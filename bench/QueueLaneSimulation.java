@@ -0,0 +1,133 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The {@code QueueLaneSimulation} class compares a single FIFO waiting queue with the weighted
+ * lanes of {@link MultiLaneQueue} on one simulated ride at peak load. Fast-pass and standard
+ * guests arrive in parties of one to six who ride together, and single riders arrive alone. The
+ * same arrivals are simulated twice: once with every party in the standard lane, which is plain
+ * FIFO and leaves seats empty whenever the party at the front does not fit, and once with
+ * fast-pass and single-rider visitors in their own lanes, where a party that fits, such as a
+ * single rider, takes those seats. The report shows the share of seats filled per cycle and the
+ * wait times of each kind of visitor, in simulated seconds.
+ */
+public class QueueLaneSimulation {
+    private static final long DAY = 12 * 60 * 60 * 1000L;
+    private static final int SEATS = 24;
+    private static final long CYCLE_TIME = 60_000;
+    private static final double[] ARRIVALS_PER_MINUTE = {5.0, 15.5, 3.0};
+    private static final double[] PARTY_SIZE_SHARES = {0.10, 0.30, 0.20, 0.25, 0.10, 0.05};
+
+    /**
+     * Runs both simulations and prints the report.
+     *
+     * @param out the stream the report is printed to
+     */
+    public static void report(PrintStream out) {
+        out.printf("%nQueue lanes at peak: %d seats every %d s, %.1f visitors per minute in parties of 1-%d%n",
+                SEATS, CYCLE_TIME / 1000, ARRIVALS_PER_MINUTE[0] + ARRIVALS_PER_MINUTE[1] + ARRIVALS_PER_MINUTE[2],
+                PARTY_SIZE_SHARES.length);
+        out.printf("%-10s %9s %12s %26s %26s %26s%n", "Queue", "SeatFill", "MeanWait",
+                "FastPass mean/p95", "Standard mean/p95", "SingleRider mean/p95");
+        print(out, "fifo", simulate(false));
+        print(out, "lanes", simulate(true));
+    }
+
+    private static void print(PrintStream out, String name, Result result) {
+        out.printf("%-10s %8.1f%% %11.0fs", name, 100.0 * result.riders / ((double) result.cycles * SEATS),
+                result.all.snapshot().getMean() / 1000);
+        for (LatencyHistogram lane : result.lanes) {
+            LatencyHistogram.Snapshot snapshot = lane.snapshot();
+            out.printf(" %17.0fs / %5ds", snapshot.getMean() / 1000, snapshot.getValueAtPercentile(95) / 1000);
+        }
+        out.println();
+    }
+
+    /**
+     * Simulates a day of arrivals, with the fast-pass and single-rider visitors in their own lanes
+     * or in the standard lane. Both runs draw the same parties at the same times.
+     */
+    private static Result simulate(boolean useLanes) {
+        Result result = new Result();
+        Map<Visitor, QueueLane> kinds = new IdentityHashMap<>();
+        Map<Visitor, Long> arrivals = new IdentityHashMap<>();
+        ParkSimulation park = new ParkSimulation();
+        Ride ride = new Ride("Roller Coaster", 0, null);
+        ride.setMaxRider(SEATS);
+        ride.addRideListener(new RideListener() {
+            @Override
+            public void onVisitorAddedToQueue(RideInterface source, Visitor visitor) {
+                arrivals.put(visitor, park.getCurrentTime());
+            }
+
+            @Override
+            public void onVisitorRemovedFromQueue(RideInterface source, Visitor visitor) {
+                long wait = park.getCurrentTime() - arrivals.remove(visitor);
+                result.all.record(wait);
+                result.lanes[kinds.remove(visitor).ordinal()].record(wait);
+            }
+
+            @Override
+            public void onCycleCompleted(RideInterface source, int riders) {
+                result.cycles++;
+                result.riders += riders;
+            }
+        });
+
+        int index = park.addRide(ride, CYCLE_TIME);
+        park.scheduleShift(index, 0, DAY + 3_600_000, new Employee("Operator", 30, "", 1000.0, true));
+        Random random = new Random(11);
+        for (QueueLane lane : QueueLane.values()) {
+            boolean alone = lane == QueueLane.SINGLE_RIDER;
+            double meanInterarrival = 60_000 * (alone ? 1 : meanPartySize()) / ARRIVALS_PER_MINUTE[lane.ordinal()];
+            long time = 0;
+            while ((time += Math.round(-meanInterarrival * Math.log(1.0 - random.nextDouble()))) <= DAY) {
+                int size = alone ? 1 : drawPartySize(random);
+                List<Visitor> party = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Visitor visitor = new Visitor("Guest", 30, "", "TICKET", "Roller Coaster");
+                    kinds.put(visitor, lane);
+                    party.add(visitor);
+                }
+                park.scheduleParty(time, index, party, useLanes ? lane : QueueLane.STANDARD);
+            }
+        }
+        park.run(DAY + 3_600_000);
+        return result;
+    }
+
+    private static double meanPartySize() {
+        double mean = 0;
+        for (int i = 0; i < PARTY_SIZE_SHARES.length; i++) {
+            mean += (i + 1) * PARTY_SIZE_SHARES[i];
+        }
+        return mean;
+    }
+
+    private static int drawPartySize(Random random) {
+        double draw = random.nextDouble();
+        for (int i = 0; i < PARTY_SIZE_SHARES.length - 1; i++) {
+            draw -= PARTY_SIZE_SHARES[i];
+            if (draw < 0) {
+                return i + 1;
+            }
+        }
+        return PARTY_SIZE_SHARES.length;
+    }
+
+    /**
+     * The seat fill and wait times of one simulation.
+     */
+    private static final class Result {
+        private final LatencyHistogram all = new LatencyHistogram();
+        private final LatencyHistogram[] lanes = {
+            new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()
+        };
+        private long cycles;
+        private long riders;
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@code ReplayHarness} class drives real {@link Ride}s with a stream of arrivals from a
+ * {@link GuestLoadGenerator}, in wall-clock time, to find out how much load a ride controller can
+ * take. Every attraction gets its own ride, which runs a cycle every cycle time while visitors
+ * are waiting. A speed-up factor compresses the arrival times: at 60, an hour of the park is
+ * replayed in a minute, and at 0 the arrivals are replayed as fast as the rides can take them.
+ *
+ * <p>Every run reports its throughput and the latency percentiles of adding a visitor to a queue
+ * and of running a cycle, and how far behind schedule the harness fell, which grows when the
+ * rides cannot keep up with the speed-up.
+ */
+public class ReplayHarness {
+    private static final long CYCLE_TIME = 60_000;
+    private static final int SEATS = 40;
+    private static final long DAY = 12 * 60 * 60 * 1000L;
+    private static final double[] PEAK_CURVE = {0.3, 0.6, 0.9, 1.0, 1.0, 0.9, 0.8, 0.8, 0.9, 0.7, 0.5, 0.3};
+
+    private final double speedUp;
+
+    /**
+     * Constructor that creates a harness with the given speed-up factor.
+     *
+     * @param speedUp how many times faster than real time the arrivals are replayed, or 0 to
+     *                replay them as fast as possible
+     */
+    public ReplayHarness(double speedUp) {
+        this.speedUp = speedUp;
+    }
+
+    /**
+     * Runs a synthetic day and a recorded history at several speed-up factors and prints the report.
+     *
+     * @param out the stream the report is printed to
+     * @throws IOException if the recorded history cannot be written or read
+     */
+    public static void report(PrintStream out) throws IOException {
+        out.printf("%nReplay: %d seats every %d s per attraction; latencies in microseconds%n",
+                SEATS, CYCLE_TIME / 1000);
+        out.printf("%-22s %7s %9s %8s %11s %26s %20s %10s%n", "Run", "SpeedUp", "Arrivals", "Wall s",
+                "Arrivals/s", "Add p50/p99/p999", "Cycle p50/p99", "Lag p99 ms");
+
+        for (double speedUp : new double[] {3600, 0}) {
+            new ReplayHarness(speedUp).run(createDay(), DAY).print(out, "synthetic day");
+        }
+
+        File history = File.createTempFile("ride-history-replay", ".csv");
+        history.deleteOnExit();
+        try {
+            List<Visitor> visitors = new ArrayList<>();
+            GuestLoadGenerator day = createDay();
+            for (GuestLoadGenerator.Arrival arrival = day.next(); arrival.getTime() < DAY; arrival = day.next()) {
+                visitors.add(arrival.getVisitor());
+            }
+            RideHistoryCsv.write(history.getPath(), visitors);
+            for (double speedUp : new double[] {3600, 0}) {
+                GuestLoadGenerator replay = GuestLoadGenerator.fromHistory(history.getPath(), 150, 5);
+                replay.setPeakCurve(PEAK_CURVE);
+                new ReplayHarness(speedUp).run(replay, Long.MAX_VALUE).print(out, "recorded history");
+            }
+        } finally {
+            history.delete();
+        }
+    }
+
+    /**
+     * Creates a busy day: 150 guests a minute at the peak, one in three a repeat rider, and the
+     * roller coaster twice as popular as the other attractions.
+     */
+    private static GuestLoadGenerator createDay() {
+        GuestLoadGenerator generator = new GuestLoadGenerator(150, 5);
+        generator.setPeakCurve(PEAK_CURVE);
+        generator.setAttractionMix(new String[] {"Ferris Wheel", "Roller Coaster", "Water Ride", "Haunted House",
+            "Carousel"}, new double[] {1, 2, 1, 1, 1});
+        generator.setRepeatRiderRate(0.3);
+        return generator;
+    }
+
+    /**
+     * Replays arrivals until the stream ends or an arrival is later than the end time, then runs
+     * the remaining cycles until every queue is empty.
+     *
+     * @param arrivals the arrivals to be replayed
+     * @param endTime the time after which no more arrivals are replayed, in milliseconds
+     * @return the throughput and latencies of the run
+     */
+    public Result run(GuestLoadGenerator arrivals, long endTime) {
+        Map<String, RideState> rides = new LinkedHashMap<>();
+        Employee operator = new Employee("Operator", 30, "", 1000.0, true);
+        Result result = new Result(speedUp);
+        long start = System.nanoTime();
+
+        GuestLoadGenerator.Arrival arrival = arrivals.next();
+        while (true) {
+            RideState due = null;
+            for (RideState state : rides.values()) {
+                if (state.ride.getWaitingQueue().size() > 0 && (due == null || state.nextCycle < due.nextCycle)) {
+                    due = state;
+                }
+            }
+            boolean hasArrival = arrival != null && arrival.getTime() <= endTime;
+            if (!hasArrival && due == null) {
+                break;
+            }
+
+            if (hasArrival && (due == null || arrival.getTime() < due.nextCycle)) {
+                result.lag.record(waitUntil(start, arrival.getTime()));
+                Visitor visitor = arrival.getVisitor();
+                RideState state = rides.get(visitor.getFavoriteAttraction());
+                if (state == null) {
+                    state = new RideState(new Ride(visitor.getFavoriteAttraction(), 0, operator), arrival.getTime());
+                    rides.put(visitor.getFavoriteAttraction(), state);
+                }
+                if (state.ride.getWaitingQueue().isEmpty()) {
+                    state.nextCycle = Math.max(state.nextCycle, arrival.getTime());
+                }
+
+                long before = System.nanoTime();
+                state.ride.addVisitorToQueue(visitor);
+                result.add.record(System.nanoTime() - before);
+                result.arrivals++;
+                arrival = arrivals.next();
+            } else {
+                result.lag.record(waitUntil(start, due.nextCycle));
+                long before = System.nanoTime();
+                due.ride.runOneCycle();
+                result.cycle.record(System.nanoTime() - before);
+                due.nextCycle += CYCLE_TIME;
+            }
+        }
+
+        result.wallTime = System.nanoTime() - start;
+        for (RideState state : rides.values()) {
+            result.riders += state.ride.getVisitors().size();
+        }
+        return result;
+    }
+
+    /**
+     * Waits until the wall-clock time of a point in the replayed day, and returns how late the
+     * harness is for it in nanoseconds.
+     */
+    private long waitUntil(long start, long time) {
+        if (speedUp <= 0) {
+            return 0;
+        }
+
+        long due = start + (long) (time * 1_000_000 / speedUp);
+        long now = System.nanoTime();
+        while (now < due) {
+            LockSupport.parkNanos(due - now);
+            now = System.nanoTime();
+        }
+        return now - due;
+    }
+
+    /**
+     * A ride of the harness and the time of its next cycle.
+     */
+    private static final class RideState {
+        private final Ride ride;
+        private long nextCycle;
+
+        private RideState(Ride ride, long nextCycle) {
+            this.ride = ride;
+            this.ride.setMaxRider(SEATS);
+            this.nextCycle = nextCycle;
+        }
+    }
+
+    /**
+     * The throughput and latencies of one run.
+     */
+    public static final class Result {
+        private final double speedUp;
+        private final LatencyHistogram add = new LatencyHistogram();
+        private final LatencyHistogram cycle = new LatencyHistogram();
+        private final LatencyHistogram lag = new LatencyHistogram();
+        private long arrivals;
+        private long riders;
+        private long wallTime;
+
+        private Result(double speedUp) {
+            this.speedUp = speedUp;
+        }
+
+        /**
+         * Prints the result as one line of the report.
+         *
+         * @param out the stream the line is printed to
+         * @param name the name of the run
+         */
+        public void print(PrintStream out, String name) {
+            LatencyHistogram.Snapshot adds = add.snapshot();
+            LatencyHistogram.Snapshot cycles = cycle.snapshot();
+            out.printf("%-22s %7s %9d %8.2f %11.0f %10.1f/%6.1f/%8.1f %9.1f/%10.1f %10.2f%n", name,
+                    speedUp > 0 ? String.format("%.0f", speedUp) : "max", arrivals, wallTime / 1e9,
+                    arrivals / (wallTime / 1e9), adds.getValueAtPercentile(50) / 1e3,
+                    adds.getValueAtPercentile(99) / 1e3, adds.getValueAtPercentile(99.9) / 1e3,
+                    cycles.getValueAtPercentile(50) / 1e3, cycles.getValueAtPercentile(99) / 1e3,
+                    lag.snapshot().getValueAtPercentile(99) / 1e6);
+        }
+
+        /**
+         * Gets the number of arrivals replayed.
+         *
+         * @return the number of visitors added to the queues
+         */
+        public long getArrivals() {
+            return arrivals;
+        }
+
+        /**
+         * Gets the number of visitors who took a ride.
+         *
+         * @return the number of riders
+         */
+        public long getRiders() {
+            return riders;
+        }
+    }
+}
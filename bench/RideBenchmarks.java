@@ -0,0 +1,546 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * The {@code RideBenchmarks} class measures the main operations of {@link Ride} for several
+ * history sizes: reporting ride events by printing every event against a background logger and no
+ * listener, queueing and running cycles (also with the recycled queue records of
+ * {@link PooledRide}, and from several turnstile threads into a {@link ConcurrentRide} against a
+ * {@link Ride} behind a lock), checking the history, sorting the visitors (with and without
+ * precomputed sort keys), querying the first and filtered visitors, looking up guests across
+ * rides, estimating waits, journaling the history with and without group commit, exporting and
+ * importing the history as CSV (also with the {@code Scanner} and {@code split} code it replaced),
+ * simulating a park-day, and running the cycles of many rides in parallel. It ends with a
+ * simulation of the queue lanes against a FIFO queue, a week of ride history kept in memory
+ * against one that spills older visitors to disk, and a replay of a park day against real rides at
+ * several speed-up factors.
+ *
+ * <p>Usage: {@code java RideBenchmarks [sizes] [filters...]}, where {@code sizes} is a
+ * comma-separated list of data sizes (default {@code 1000,10000,100000}) and each filter selects
+ * the benchmarks whose name contains it.
+ */
+public class RideBenchmarks {
+    private static final String[] ATTRACTIONS = {
+        "Ferris Wheel", "Roller Coaster", "Water Ride", "Haunted House", "Carousel"
+    };
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the data sizes followed by the benchmark name filters
+     * @throws IOException if a temporary file cannot be created
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {1000, 10000, 100000};
+        List<String> filters = new ArrayList<>();
+        if (args.length > 0) {
+            sizes = Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray();
+            filters.addAll(Arrays.asList(args).subList(1, args.length));
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(3, 5, 500, filters);
+        runner.printHeader();
+        for (int size : sizes) {
+            runAll(runner, size);
+        }
+        if (runner.isSelected("simulation.queueLanes")) {
+            QueueLaneSimulation.report(System.out);
+        }
+        if (runner.isSelected("simulation.historyRetention")) {
+            HistoryRetentionSimulation.report(System.out);
+        }
+        if (runner.isSelected("simulation.replay")) {
+            ReplayHarness.report(System.out);
+        }
+    }
+
+    /**
+     * Runs every benchmark for one data size.
+     */
+    private static void runAll(BenchmarkRunner runner, int size) throws IOException {
+        List<Visitor> visitors = createVisitors(size, 42);
+        Employee operator = new Employee("e1", 20, "11111111", 1000.0, true);
+
+        runner.run("queue.addVisitorAndRunCycles", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(32);
+            for (Visitor visitor : visitors) {
+                ride.addVisitorToQueue(visitor);
+            }
+            while (!ride.getWaitingQueue().isEmpty()) {
+                ride.runOneCycle();
+            }
+            BenchmarkRunner.consume(ride);
+            return size;
+        });
+
+        PooledRide pooledRide = new PooledRide("Ferris Wheel", size, size, operator);
+        pooledRide.setMaxRider(32);
+        runner.run("queue.pooled.addVisitorAndRunCycles", size, () -> {
+            pooledRide.getVisitors().clear();
+            for (Visitor visitor : visitors) {
+                pooledRide.addVisitorToQueue(visitor);
+            }
+            while (pooledRide.getQueueSize() > 0) {
+                pooledRide.runOneCycle();
+            }
+            BenchmarkRunner.consume(pooledRide);
+            return size;
+        });
+
+        PrintStream console = new PrintStream(new BufferedOutputStream(new FileOutputStream(nullDevice()), 128), true);
+        runner.run("events.println.consoleListener", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(8);
+            ride.addRideListener(new ConsoleRideListener(console));
+            addVisitorsAndRunCycles(ride, visitors);
+            return size;
+        });
+
+        runner.run("events.asyncLogger", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(8);
+            try (AsyncRideLogger logger = new AsyncRideLogger(new FileOutputStream(nullDevice()), 65536)) {
+                ride.addRideListener(logger);
+                addVisitorsAndRunCycles(ride, visitors);
+            }
+            return size;
+        });
+
+        runner.run("events.noListener", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(8);
+            addVisitorsAndRunCycles(ride, visitors);
+            return size;
+        });
+
+        runner.run("queue.addVisitorAndRunCyclesWithMetrics", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(32);
+            ride.setMetrics(new RideMetrics());
+            for (Visitor visitor : visitors) {
+                ride.addVisitorToQueue(visitor);
+            }
+            while (!ride.getWaitingQueue().isEmpty()) {
+                ride.runOneCycle();
+            }
+            BenchmarkRunner.consume(ride.getMetrics().snapshot());
+            return size;
+        });
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        runner.run("metrics.histogram.record", size, () -> {
+            for (int i = 0; i < size; i++) {
+                histogram.record(i & 4095);
+            }
+            return size;
+        });
+
+        for (int syncBatchSize : new int[] {1, 256}) {
+            runner.run("journal.addVisitorAndRunCycles.batch" + syncBatchSize, size, () -> {
+                File journalFile = File.createTempFile("ride-journal", ".log");
+                File snapshotFile = new File(journalFile.getPath() + ".snapshot");
+                try (RideJournal journal = new RideJournal(journalFile.getPath(), snapshotFile.getPath(),
+                        syncBatchSize, 50, 0)) {
+                    Ride ride = new Ride("Ferris Wheel", 0, operator);
+                    ride.setMaxRider(32);
+                    ride.recoverFromJournal(journal);
+                    for (Visitor visitor : visitors) {
+                        ride.addVisitorToQueue(visitor);
+                    }
+                    while (!ride.getWaitingQueue().isEmpty()) {
+                        ride.runOneCycle();
+                    }
+                    journal.sync();
+                    BenchmarkRunner.consume(journal.getSyncCount());
+                } finally {
+                    journalFile.delete();
+                }
+                return size;
+            });
+        }
+
+        runner.run("queue.addVisitorsToQueueInBursts", size, () -> {
+            Ride ride = new Ride("Ferris Wheel", 0, operator);
+            ride.setMaxRider(32);
+            for (int from = 0; from < size; from += 256) {
+                ride.addVisitorsToQueue(visitors.subList(from, Math.min(from + 256, size)));
+            }
+            while (!ride.getWaitingQueue().isEmpty()) {
+                ride.runOneCycle();
+            }
+            BenchmarkRunner.consume(ride);
+            return size;
+        });
+
+        Ride lockedRide = new Ride("Ferris Wheel", 0, operator);
+        lockedRide.setMaxRider(32);
+        long[] lockedServed = new long[1];
+        lockedRide.addRideListener(riderCounter(lockedServed));
+        runner.run("concurrent.turnstiles4.lockedRide", size, () -> {
+            lockedRide.getVisitors().clear();
+            lockedServed[0] = 0;
+            runTurnstiles(visitors, 4, visitor -> {
+                synchronized (lockedRide) {
+                    lockedRide.addVisitorToQueue(visitor);
+                }
+            }, () -> {
+                synchronized (lockedRide) {
+                    lockedRide.runOneCycle();
+                }
+            }, lockedServed);
+            return size;
+        });
+
+        runner.run("concurrent.turnstiles4.concurrentRide", size, () -> {
+            ConcurrentRide ride = new ConcurrentRide("Ferris Wheel", 0, operator);
+            ride.setMaxRider(32);
+            long[] served = new long[1];
+            ride.addRideListener(riderCounter(served));
+            runTurnstiles(visitors, 4, ride::addVisitorToQueue, ride::runOneCycle, served);
+            return size;
+        });
+
+        Ride history = createHistory(visitors, operator);
+        List<Visitor> probes = createVisitors(1024, 7);
+        int[] next = new int[1];
+        runner.run("history.checkVisitorFromHistory", size, () -> {
+            Visitor probe = probes.get(next[0]++ & 1023);
+            BenchmarkRunner.consume(history.checkVisitorFromHistory(probe));
+            return 1;
+        });
+
+        runner.run("history.checkTicketFromHistory", size, () -> {
+            Visitor probe = probes.get(next[0]++ & 1023);
+            BenchmarkRunner.consume(history.checkTicketFromHistory(probe.getTicketId()));
+            return 1;
+        });
+
+        String[] missingTickets = new String[1024];
+        for (int i = 0; i < missingTickets.length; i++) {
+            missingTickets[i] = "TICKET-" + (size + i);
+        }
+        List<Ride> parkHistories = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            parkHistories.add(createHistory(createVisitors(size / 20, 100 + i), operator));
+        }
+        runner.run("history.checkTicketFromHistoryAcrossRides", size, () -> {
+            String ticketId = missingTickets[next[0]++ & 1023];
+            int ridden = 0;
+            for (Ride ride : parkHistories) {
+                if (ride.checkTicketFromHistory(ticketId)) {
+                    ridden++;
+                }
+            }
+            BenchmarkRunner.consume(ridden);
+            return parkHistories.size();
+        });
+
+        runner.run("sort.visitorComparator", size, () -> {
+            LinkedList<Visitor> copy = new LinkedList<>(visitors);
+            history.sortVisitors(copy, new VisitorComparator());
+            BenchmarkRunner.consume(copy);
+            return 1;
+        });
+
+        runner.run("sort.collectionsSort", size, () -> {
+            LinkedList<Visitor> copy = new LinkedList<>(visitors);
+            Collections.sort(copy, new VisitorComparator());
+            BenchmarkRunner.consume(copy);
+            return 1;
+        });
+
+        ParkGuestIndex guestIndex = new ParkGuestIndex();
+        for (Ride ride : parkHistories) {
+            for (Visitor visitor : ride.getVisitors()) {
+                guestIndex.onVisitorAddedToHistory(ride, visitor);
+            }
+        }
+        runner.run("park.ridesTaken.scanHistories", size, () -> {
+            String ticketId = probes.get(next[0]++ & 1023).getTicketId();
+            List<Ride> taken = new ArrayList<>();
+            for (Ride ride : parkHistories) {
+                for (Visitor visitor : ride.getVisitors()) {
+                    if (ticketId.equals(visitor.getTicketId())) {
+                        taken.add(ride);
+                        break;
+                    }
+                }
+            }
+            BenchmarkRunner.consume(taken);
+            return 1;
+        });
+
+        runner.run("park.ridesTaken.checkEachRide", size, () -> {
+            String ticketId = probes.get(next[0]++ & 1023).getTicketId();
+            List<Ride> taken = new ArrayList<>();
+            for (Ride ride : parkHistories) {
+                if (ride.checkTicketFromHistory(ticketId)) {
+                    taken.add(ride);
+                }
+            }
+            BenchmarkRunner.consume(taken);
+            return 1;
+        });
+
+        runner.run("park.ridesTaken.guestIndex", size, () -> {
+            BenchmarkRunner.consume(guestIndex.getRidesTaken(probes.get(next[0]++ & 1023).getTicketId()));
+            return 1;
+        });
+
+        runner.run("park.uniqueGuests.hashSet", size, () -> {
+            Set<String> guests = new HashSet<>();
+            for (Ride ride : parkHistories) {
+                for (Visitor visitor : ride.getVisitors()) {
+                    guests.add(visitor.getTicketId());
+                }
+            }
+            BenchmarkRunner.consume(guests.size());
+            return 1;
+        });
+
+        runner.run("park.uniqueGuests.parkSketch", size, () -> {
+            BenchmarkRunner.consume(guestIndex.estimateUniqueGuests());
+            return 1;
+        });
+
+        runner.run("park.uniqueGuests.sketchUnion", size, () -> {
+            BenchmarkRunner.consume(guestIndex.estimateUniqueGuests(parkHistories));
+            return 1;
+        });
+
+        long[] clock = new long[1];
+        WaitTimeEstimator estimator = new WaitTimeEstimator(() -> clock[0], WaitTimeEstimator.DEFAULT_SMOOTHING,
+                WaitTimeEstimator.DEFAULT_REFRESH_INTERVAL);
+        for (Ride ride : parkHistories) {
+            for (int cycle = 0; cycle < 10; cycle++) {
+                for (int i = 0; i < 30; i++) {
+                    estimator.onVisitorAddedToQueue(ride, null);
+                }
+                for (int i = 0; i < 24; i++) {
+                    estimator.onVisitorRemovedFromQueue(ride, null);
+                }
+                clock[0] += 60_000;
+                estimator.onCycleCompleted(ride, 24);
+            }
+        }
+        runner.run("wait.estimateWait", size, () -> {
+            Ride ride = parkHistories.get(next[0]++ % parkHistories.size());
+            BenchmarkRunner.consume(estimator.estimateWait(ride, next[0] & 1023));
+            return 1;
+        });
+
+        runner.run("wait.snapshotAllRides", size, () -> {
+            clock[0]++;
+            BenchmarkRunner.consume(estimator.getSnapshot().getEstimate("Ferris Wheel"));
+            return 1;
+        });
+
+        runner.run("query.sortFullHistory.top100", size, () -> {
+            LinkedList<Visitor> copy = new LinkedList<>(history.getVisitors());
+            history.sortVisitors(copy, new VisitorComparator());
+            BenchmarkRunner.consume(new ArrayList<>(copy.subList(0, Math.min(100, copy.size()))));
+            return 1;
+        });
+
+        runner.run("query.topVisitors.top100", size, () -> {
+            BenchmarkRunner.consume(history.topVisitors(new VisitorComparator(), 100));
+            return 1;
+        });
+
+        runner.run("query.filterThenSort.ageRange", size, () -> {
+            List<Visitor> matches = new ArrayList<>();
+            for (Visitor visitor : history.getVisitors()) {
+                if (visitor.getAge() >= 30 && visitor.getAge() < 40) {
+                    matches.add(visitor);
+                }
+            }
+            history.sortVisitors(matches, new VisitorComparator());
+            BenchmarkRunner.consume(matches);
+            return 1;
+        });
+
+        runner.run("query.findVisitors.ageRange", size, () -> {
+            BenchmarkRunner.consume(history.findVisitors(
+                    visitor -> visitor.getAge() >= 30 && visitor.getAge() < 40, new VisitorComparator(), -1));
+            return 1;
+        });
+
+        runner.run("query.findVisitors.attractionTop100", size, () -> {
+            BenchmarkRunner.consume(history.findVisitors(
+                    visitor -> "Carousel".equals(visitor.getFavoriteAttraction()), new VisitorComparator(), 100));
+            return 1;
+        });
+
+        List<Visitor> guests = createVisitors(1024, 11);
+        runner.run("park.simulateDay", size, () -> {
+            ParkSimulation park = createParkDay(size, guests);
+            return park.run(Long.MAX_VALUE);
+        });
+
+        int parkRides = Math.max(size / 100, 1);
+        for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ParkRunner parkRunner = new ParkRunner(pool);
+            List<Ride> park = new ArrayList<>();
+            runner.run("park.parallelCycles.p" + parallelism, parkRides, () -> {
+                if (park.isEmpty() || park.get(0).getWaitingQueue().isEmpty()) {
+                    park.clear();
+                    for (int i = 0; i < parkRides; i++) {
+                        Ride ride = new Ride("Ride " + i, 0, operator);
+                        ride.setMaxRider(32);
+                        for (int j = 0; j < 32 * 20; j++) {
+                            ride.addVisitorToQueue(guests.get(j & (guests.size() - 1)));
+                        }
+                        park.add(ride);
+                    }
+                }
+                return parkRunner.runOneCycle(park).getTotalRidersServed();
+            });
+            pool.shutdown();
+        }
+
+        File file = File.createTempFile("ride-history", ".csv");
+        file.deleteOnExit();
+        runner.run("csv.exportRideHistory", size, () -> {
+            history.exportRideHistory(file.getPath());
+            return size;
+        });
+
+        runner.run("csv.legacy.exportRideHistory", size, () -> {
+            LegacyRideHistoryCsv.write(file.getPath(), history.getVisitors());
+            return size;
+        });
+
+        RideHistoryCsv.write(file.getPath(), history.getVisitors());
+        runner.run("csv.readRows", size, () -> {
+            RideHistoryCsv.read(file.getPath(), BenchmarkRunner::consume);
+            return size;
+        });
+
+        runner.run("csv.legacy.readRows", size, () -> {
+            LegacyRideHistoryCsv.read(file.getPath(), BenchmarkRunner::consume);
+            return size;
+        });
+
+        runner.run("csv.importRideHistory", size, () -> {
+            Ride ride = new Ride();
+            ride.importRideHistory(file.getPath());
+            BenchmarkRunner.consume(ride);
+            return size;
+        });
+    }
+
+    /**
+     * Adds the visitors to the queue of a ride and runs cycles until the queue is empty.
+     */
+    private static void addVisitorsAndRunCycles(Ride ride, List<Visitor> visitors) {
+        for (Visitor visitor : visitors) {
+            ride.addVisitorToQueue(visitor);
+        }
+        while (!ride.getWaitingQueue().isEmpty()) {
+            ride.runOneCycle();
+        }
+        BenchmarkRunner.consume(ride);
+    }
+
+    /**
+     * Gets the path of the device that discards everything written to it, so that printed events
+     * still pay for a write to the operating system, as they do on a console.
+     */
+    private static String nullDevice() {
+        return new File("/dev/null").exists() ? "/dev/null" : "NUL";
+    }
+
+    /**
+     * Adds the visitors to a ride from several turnstile threads while the calling thread runs
+     * cycles, until every visitor has been served. The thread starts are part of the measurement.
+     */
+    private static void runTurnstiles(List<Visitor> visitors, int turnstiles, Consumer<Visitor> enqueue,
+                                      Runnable cycle, long[] served) throws InterruptedException {
+        Thread[] threads = new Thread[turnstiles];
+        for (int t = 0; t < turnstiles; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < visitors.size(); i += turnstiles) {
+                    enqueue.accept(visitors.get(i));
+                }
+            });
+            threads[t].start();
+        }
+        while (served[0] < visitors.size()) {
+            cycle.run();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Creates a listener that adds up the riders of every cycle. It is called on the thread that
+     * runs the cycles.
+     */
+    private static RideListener riderCounter(long[] served) {
+        return new RideListener() {
+            @Override
+            public void onCycleCompleted(RideInterface ride, int riders) {
+                served[0] += riders;
+            }
+        };
+    }
+
+    /**
+     * Creates a twelve-hour park-day of 20 rides with two operator shifts each, visited by about
+     * {@code guests} visitors in total.
+     */
+    static ParkSimulation createParkDay(int guests, List<Visitor> visitors) {
+        int rides = 20;
+        long day = 12 * 60 * 60 * 1000L;
+        double meanInterarrival = (double) day * rides / guests;
+        Random random = new Random(3);
+        int[] next = new int[1];
+        ParkSimulation park = new ParkSimulation();
+        for (int i = 0; i < rides; i++) {
+            Ride ride = new Ride("Ride " + i, 0, null);
+            ride.setMaxRider(24);
+            int index = park.addRide(ride, 60_000 + 5_000 * i);
+            park.scheduleShift(index, 0, day / 2, new Employee("Early " + i, 30, "", 1000.0, true));
+            park.scheduleShift(index, day / 2, day + 3_600_000, new Employee("Late " + i, 30, "", 1000.0, true));
+            park.scheduleArrivals(index, 0, day, meanInterarrival,
+                    () -> visitors.get(next[0]++ & (visitors.size() - 1)), random);
+        }
+        return park;
+    }
+
+    /**
+     * Creates a ride whose history holds the given visitors.
+     */
+    static Ride createHistory(List<Visitor> visitors, Employee operator) {
+        Ride ride = new Ride("Ferris Wheel", 0, operator);
+        for (Visitor visitor : visitors) {
+            ride.addVisitorToHistory(visitor);
+        }
+        return ride;
+    }
+
+    /**
+     * Creates visitors with distinct names and shuffled {@code TICKET<number>} IDs.
+     */
+    static List<Visitor> createVisitors(int count, long seed) {
+        Random random = new Random(seed);
+        List<Visitor> visitors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int ticket = random.nextInt(count * 4);
+            visitors.add(new Visitor("Visitor " + seed + "-" + i, 18 + random.nextInt(60),
+                    "555-" + (100 + random.nextInt(900)) + "-" + (1000 + random.nextInt(9000)),
+                    "TICKET" + ticket, ATTRACTIONS[random.nextInt(ATTRACTIONS.length)]));
+        }
+        return visitors;
+    }
+}
@@ -24,6 +24,7 @@ public class AssignmentTwo {
     public void partThree(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
         Ride ride = new Ride("Ferris Wheel", 5, employee);
+        ride.addRideListener(new ConsoleRideListener());
 
         ride.addVisitorToQueue(new Visitor("Alice", 25, "555-111-2222",
                 "TICKET001", "Ferris Wheel"));
@@ -48,6 +49,7 @@ public class AssignmentTwo {
     public void partFourA(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
         Ride ride = new Ride("Ferris Wheel", 5, employee);
+        ride.addRideListener(new ConsoleRideListener());
 
         ride.addVisitorToHistory(new Visitor("Alice", 25, "555-111-2222",
                 "TICKET001", "Ferris Wheel"));
@@ -74,6 +76,7 @@ public class AssignmentTwo {
     public void partFourB(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
         Ride ride = new Ride("Ferris Wheel", 5, employee);
+        ride.addRideListener(new ConsoleRideListener());
 
         ride.addVisitorToHistory(new Visitor("Alice", 25, "555-111-2222",
                 "TICKET003", "Ferris Wheel"));
@@ -98,7 +101,8 @@ public class AssignmentTwo {
      */
     public void partFive(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
-        Ride ride = new Ride("Ferris Wheel", 5, employee);
+        Ride ride = new Ride("Ferris Wheel", 10, employee);
+        ride.addRideListener(new ConsoleRideListener());
         ride.setMaxRider(4);
 
         for (int i = 1; i <= 10; i++) {
@@ -127,6 +131,7 @@ public class AssignmentTwo {
     public void partSix(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
         Ride ride = new Ride("Ferris Wheel", 5, employee);
+        ride.addRideListener(new ConsoleRideListener());
 
         ride.addVisitorToHistory(new Visitor("Alice", 25, "555-111-2222",
                 "TICKET003", "Ferris Wheel"));
@@ -148,6 +153,7 @@ public class AssignmentTwo {
     public void partSeven(){
         Employee employee = new Employee("e1", 20, "11111111", 1000.0, true);
         Ride ride = new Ride("Ferris Wheel", 5, employee);
+        ride.addRideListener(new ConsoleRideListener());
 
         ride.importRideHistory("RideHistory.csv");
 
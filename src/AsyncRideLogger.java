@@ -0,0 +1,224 @@
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code AsyncRideLogger} class implements the {@link RideListener} interface and prints the
+ * ride events on a background thread. The ride thread only places the event in a bounded queue;
+ * the background thread formats the messages in batches and flushes the output once per batch.
+ * When the queue is full, new events are dropped and counted instead of blocking the ride.
+ *
+ * <p>The visitor of an event is copied when the event is placed in the queue, because a ride
+ * such as {@link PooledRide} only lends its visitor records to listeners for the duration of the
+ * call and reuses them for other guests afterwards.
+ */
+public class AsyncRideLogger implements RideListener, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 65536;
+    private static final int BATCH_SIZE = 512;
+
+    private final BlockingQueue<Event> events;
+    private final PrintStream out;
+    private final ConsoleRideListener printer;
+    private final AtomicLong droppedEvents;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Default constructor that prints the events to {@code System.out}.
+     */
+    public AsyncRideLogger() {
+        this(System.out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that prints the events to the given stream.
+     *
+     * @param out the stream the event messages are written to
+     * @param capacity the maximum number of events waiting to be printed
+     */
+    public AsyncRideLogger(OutputStream out, int capacity) {
+        this.events = new ArrayBlockingQueue<>(capacity);
+        this.out = new PrintStream(new BufferedOutputStream(out, 1 << 16), false);
+        this.printer = new ConsoleRideListener(this.out);
+        this.droppedEvents = new AtomicLong();
+        this.worker = new Thread(this::drainEvents, "ride-logger");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Gets the number of events dropped because the logger could not keep up.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Prints all events that are still waiting, then stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void onVisitorAddedToQueue(RideInterface ride, Visitor visitor) {
+        publish(new Event(EventType.ADDED_TO_QUEUE, ride, visitor, 0));
+    }
+
+    @Override
+    public void onQueueFull(RideInterface ride, Visitor visitor) {
+        publish(new Event(EventType.QUEUE_FULL, ride, visitor, 0));
+    }
+
+    @Override
+    public void onVisitorRemovedFromQueue(RideInterface ride, Visitor visitor) {
+        publish(new Event(EventType.REMOVED_FROM_QUEUE, ride, visitor, 0));
+    }
+
+    @Override
+    public void onQueueEmpty(RideInterface ride) {
+        publish(new Event(EventType.QUEUE_EMPTY, ride, null, 0));
+    }
+
+    @Override
+    public void onVisitorAddedToHistory(RideInterface ride, Visitor visitor) {
+        publish(new Event(EventType.ADDED_TO_HISTORY, ride, visitor, 0));
+    }
+
+    @Override
+    public void onCycleCompleted(RideInterface ride, int riders) {
+        publish(new Event(EventType.CYCLE_COMPLETED, ride, null, riders));
+    }
+
+    @Override
+    public void onNoOperator(RideInterface ride) {
+        publish(new Event(EventType.NO_OPERATOR, ride, null, 0));
+    }
+
+    @Override
+    public void onNoWaitingVisitors(RideInterface ride) {
+        publish(new Event(EventType.NO_WAITING_VISITORS, ride, null, 0));
+    }
+
+    @Override
+    public void onNullVisitor(RideInterface ride) {
+        publish(new Event(EventType.NULL_VISITOR, ride, null, 0));
+    }
+
+    /**
+     * Places an event in the queue, or counts it as dropped when the queue is full or closed.
+     *
+     * @param event the event to be printed
+     */
+    private void publish(Event event) {
+        if (closed || !events.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Body of the background thread. Takes the waiting events in batches, prints them and
+     * flushes the output after every batch, until the logger is closed and the queue is empty.
+     */
+    private void drainEvents() {
+        List<Event> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!closed || !events.isEmpty()) {
+                Event first = events.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                events.drainTo(batch, BATCH_SIZE - 1);
+                for (Event event : batch) {
+                    print(event);
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints one event with the same message the console listener uses.
+     *
+     * @param event the event to be printed
+     */
+    private void print(Event event) {
+        switch (event.type) {
+            case ADDED_TO_QUEUE:
+                printer.onVisitorAddedToQueue(event.ride, event.visitor);
+                break;
+            case QUEUE_FULL:
+                printer.onQueueFull(event.ride, event.visitor);
+                break;
+            case REMOVED_FROM_QUEUE:
+                printer.onVisitorRemovedFromQueue(event.ride, event.visitor);
+                break;
+            case QUEUE_EMPTY:
+                printer.onQueueEmpty(event.ride);
+                break;
+            case ADDED_TO_HISTORY:
+                printer.onVisitorAddedToHistory(event.ride, event.visitor);
+                break;
+            case CYCLE_COMPLETED:
+                printer.onCycleCompleted(event.ride, event.riders);
+                break;
+            case NO_OPERATOR:
+                printer.onNoOperator(event.ride);
+                break;
+            case NO_WAITING_VISITORS:
+                printer.onNoWaitingVisitors(event.ride);
+                break;
+            case NULL_VISITOR:
+                printer.onNullVisitor(event.ride);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The kinds of ride events the logger can hold.
+     */
+    private enum EventType {
+        ADDED_TO_QUEUE, QUEUE_FULL, REMOVED_FROM_QUEUE, QUEUE_EMPTY, ADDED_TO_HISTORY,
+        CYCLE_COMPLETED, NO_OPERATOR, NO_WAITING_VISITORS, NULL_VISITOR
+    }
+
+    /**
+     * A ride event waiting to be printed.
+     */
+    private static final class Event {
+        private final EventType type;
+        private final RideInterface ride;
+        private final Visitor visitor;
+        private final int riders;
+
+        private Event(EventType type, RideInterface ride, Visitor visitor, int riders) {
+            this.type = type;
+            this.ride = ride;
+            this.visitor = visitor == null ? null : new Visitor(visitor.getName(), visitor.getAge(),
+                    visitor.getPhoneNumber(), visitor.getTicketId(), visitor.getFavoriteAttraction());
+            this.riders = riders;
+        }
+    }
+}
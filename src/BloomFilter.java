@@ -0,0 +1,159 @@
+/**
+ * The {@code BloomFilter} class is a compact probabilistic set of strings. It answers whether a
+ * string might have been added: a negative answer is always correct, while a positive answer is
+ * wrong with a small probability, the false-positive rate. The filter is blocked: all bits of a
+ * string lie in one 64-byte block, so a lookup touches a single cache line, and a lookup for a
+ * string that was never added usually stops at its first unset bit. The block and the bits are
+ * chosen from a 64-bit {@link StringHash} of the string's characters.
+ *
+ * <p>The filter is sized for an expected number of strings. Adding more strings than that raises
+ * the false-positive rate, so the owner should build a larger filter once {@link #isFull()}.
+ */
+public class BloomFilter {
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+    private static final int PROBE_BITS = Integer.numberOfTrailingZeros(BLOCK_BITS);
+    private static final int PROBES_PER_WORD = Long.SIZE / PROBE_BITS;
+
+    private final long[] bits;
+    private final int numBlocks;
+    private final int numHashes;
+    private final int expectedInsertions;
+    private final double falsePositiveRate;
+    private int insertions;
+
+    /**
+     * Constructor that creates an empty filter.
+     *
+     * @param expectedInsertions the number of strings the filter is sized for
+     * @param falsePositiveRate the false-positive rate wanted at that number of strings, between 0 and 1
+     * @throws IllegalArgumentException if the number of strings is not positive or the rate is not
+     *                                  between 0 and 1
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid Bloom filter size " + expectedInsertions
+                    + " or false-positive rate " + falsePositiveRate);
+        }
+
+        double ln2 = Math.log(2);
+        double bitsPerString = -Math.log(falsePositiveRate) / (ln2 * ln2);
+        // Strings are spread unevenly over the blocks, which raises the rate of a blocked filter
+        // more the lower the target; extra bits per decade of the rate keep it on target.
+        double blockingOverhead = 1 + 0.06 * -Math.log10(falsePositiveRate);
+        long totalBits = (long) Math.ceil(expectedInsertions * bitsPerString * blockingOverhead);
+        this.numBlocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS,
+                Math.max(1, (totalBits + BLOCK_BITS - 1) / BLOCK_BITS));
+        this.bits = new long[numBlocks * BLOCK_LONGS];
+        this.numHashes = (int) Math.max(1, Math.min(16, Math.round(bitsPerString * ln2)));
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Adds a string to the filter.
+     *
+     * @param value the string to be added
+     */
+    public void add(String value) {
+        long hash = StringHash.hash64(value);
+        int base = block(hash) * BLOCK_LONGS;
+        long probes = 0;
+        for (int i = 0; i < numHashes; i++) {
+            if (i % PROBES_PER_WORD == 0) {
+                probes = probeWord(hash, i / PROBES_PER_WORD);
+            }
+            int bit = (int) probes & (BLOCK_BITS - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+            probes >>>= PROBE_BITS;
+        }
+        insertions++;
+    }
+
+    /**
+     * Checks whether a string might have been added to the filter.
+     *
+     * @param value the string to be checked
+     * @return {@code false} if the string has certainly not been added, otherwise {@code true}
+     */
+    public boolean mightContain(String value) {
+        long hash = StringHash.hash64(value);
+        int base = block(hash) * BLOCK_LONGS;
+        long probes = 0;
+        for (int i = 0; i < numHashes; i++) {
+            if (i % PROBES_PER_WORD == 0) {
+                probes = probeWord(hash, i / PROBES_PER_WORD);
+            }
+            int bit = (int) probes & (BLOCK_BITS - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            probes >>>= PROBE_BITS;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of strings added to the filter.
+     *
+     * @return the number of strings added
+     */
+    public int getInsertions() {
+        return insertions;
+    }
+
+    /**
+     * Gets the number of strings the filter is sized for.
+     *
+     * @return the expected number of strings
+     */
+    public int getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    /**
+     * Gets the false-positive rate the filter was sized for.
+     *
+     * @return the target false-positive rate
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Checks whether more strings have been added than the filter is sized for.
+     *
+     * @return {@code true} if the filter is over its expected number of strings
+     */
+    public boolean isFull() {
+        return insertions > expectedInsertions;
+    }
+
+    /**
+     * Gets the size of the filter.
+     *
+     * @return the number of bytes used by the bits of the filter
+     */
+    public long getSizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * Derives the given word of bit positions from a hash with the splitmix64 generator. Each
+     * word holds the positions of seven bits within the block, nine bits each, so every bit of a
+     * string is chosen independently of the others.
+     */
+    private static long probeWord(long hash, int word) {
+        long z = hash + (word + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Chooses the block of a hash from its upper half.
+     */
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * numBlocks) >>> 32);
+    }
+}
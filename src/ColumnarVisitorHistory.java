@@ -0,0 +1,328 @@
+import java.util.*;
+
+/**
+ * The {@code ColumnarVisitorHistory} class stores a ride history column by column instead of as a
+ * list of {@link Visitor} objects. Ages are kept in an {@code int[]}, favorite attractions as
+ * indexes into a dictionary of distinct attractions, and ticket IDs of the form
+ * {@code TICKET<digits>} as packed {@code long} values. Names and phone numbers are kept as
+ * references to the original strings. A {@code Visitor} is only created when one is requested.
+ *
+ * <p>Names are indexed in an open-addressing table of positions in the name column, so adding a
+ * visitor does not allocate anything as long as the history has room, its ticket ID has the usual
+ * form and its attraction has been seen before.
+ */
+public class ColumnarVisitorHistory implements Iterable<Visitor> {
+    private static final String TICKET_PREFIX = "TICKET";
+    private static final int MAX_TICKET_DIGITS = 16;
+    private static final long NOT_PACKED = -1L;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private String[] names;
+    private int[] ages;
+    private String[] phoneNumbers;
+    private long[] packedTicketIds;
+    private int[] attractionIds;
+    private int size;
+    private final Map<Integer, String> unpackedTicketIds;
+    private final List<String> attractions;
+    private final Map<String, Integer> attractionIndex;
+    private int[] nameTable;
+    private int distinctNames;
+
+    /**
+     * Default constructor that creates an empty history.
+     */
+    public ColumnarVisitorHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that creates an empty history with room for the given number of visitors.
+     *
+     * @param initialCapacity the number of visitors the history can hold before it grows
+     */
+    public ColumnarVisitorHistory(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.names = new String[capacity];
+        this.ages = new int[capacity];
+        this.phoneNumbers = new String[capacity];
+        this.packedTicketIds = new long[capacity];
+        this.attractionIds = new int[capacity];
+        this.unpackedTicketIds = new HashMap<>();
+        this.attractions = new ArrayList<>();
+        this.attractionIndex = new HashMap<>();
+        this.nameTable = new int[Integer.highestOneBit(Math.max(capacity, 8) - 1) << 2];
+    }
+
+    /**
+     * Adds a visitor to the history. The fields of the visitor are copied into the columns, so
+     * later changes to the visitor do not affect the history.
+     *
+     * @param visitor the visitor to be added to the history
+     */
+    public void addVisitorToHistory(Visitor visitor) {
+        if (visitor == null) {
+            System.out.println("Visitor is null.");
+            return;
+        }
+
+        if (size == ages.length) {
+            grow();
+        }
+
+        names[size] = visitor.getName();
+        ages[size] = visitor.getAge();
+        phoneNumbers[size] = visitor.getPhoneNumber();
+        long packed = packTicketId(visitor.getTicketId());
+        packedTicketIds[size] = packed;
+        if (packed == NOT_PACKED) {
+            unpackedTicketIds.put(size, visitor.getTicketId());
+        }
+        attractionIds[size] = attractionId(visitor.getFavoriteAttraction());
+        size++;
+        indexName(size - 1);
+    }
+
+    /**
+     * Checks if a visitor is already in the history. Visitors are matched by name.
+     *
+     * @param visitor the visitor to be checked
+     * @return {@code true} if the visitor is in the history, otherwise {@code false}
+     */
+    public boolean checkVisitorFromHistory(Visitor visitor) {
+        if (visitor == null) {
+            System.out.println("Visitor is null.");
+            return false;
+        }
+
+        if (nameTable[findName(visitor.getName())] != 0) {
+            System.out.println(visitor.getName() + " has taken the Ride.");
+            return true;
+        }
+
+        System.out.println(visitor.getName() + " has not taken the Ride.");
+        return false;
+    }
+
+    /**
+     * Returns the number of visitors in the history.
+     *
+     * @return the number of visitors in the history
+     */
+    public int numberOfVisitors() {
+        System.out.println(size + " of visitors has taken the Ride.");
+        return size;
+    }
+
+    /**
+     * Prints the details of all visitors in the history.
+     */
+    public void printRideHistory() {
+        if (size == 0) {
+            System.out.println("Ride history is empty.");
+            return;
+        }
+
+        System.out.println("Ride history:");
+        for (int i = 0; i < size; i++) {
+            System.out.println(getVisitor(i));
+        }
+    }
+
+    /**
+     * Gets the number of visitors in the history without printing it.
+     *
+     * @return the number of visitors in the history
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every visitor from the history but keeps its columns, so that it can be filled
+     * again, for example on the next day, without growing them again.
+     */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(phoneNumbers, 0, size, null);
+        Arrays.fill(nameTable, 0);
+        unpackedTicketIds.clear();
+        distinctNames = 0;
+        size = 0;
+    }
+
+    /**
+     * Creates a {@code Visitor} holding the fields of the visitor at the given position.
+     *
+     * @param index the position of the visitor in the history
+     * @return a new visitor with the stored fields
+     * @throws IndexOutOfBoundsException if the index is not within the history
+     */
+    public Visitor getVisitor(int index) {
+        Objects.checkIndex(index, size);
+        return new Visitor(names[index], ages[index], phoneNumbers[index],
+                getTicketId(index), attractions.get(attractionIds[index]));
+    }
+
+    /**
+     * Gets the age of the visitor at the given position.
+     *
+     * @param index the position of the visitor in the history
+     * @return the age of the visitor
+     * @throws IndexOutOfBoundsException if the index is not within the history
+     */
+    public int getAge(int index) {
+        Objects.checkIndex(index, size);
+        return ages[index];
+    }
+
+    /**
+     * Gets the ticket ID of the visitor at the given position.
+     *
+     * @param index the position of the visitor in the history
+     * @return the ticket ID of the visitor
+     * @throws IndexOutOfBoundsException if the index is not within the history
+     */
+    public String getTicketId(int index) {
+        Objects.checkIndex(index, size);
+        long packed = packedTicketIds[index];
+        if (packed == NOT_PACKED) {
+            return unpackedTicketIds.get(index);
+        }
+
+        int digits = (int) (packed >>> 56);
+        long number = packed & 0x00ffffffffffffffL;
+        StringBuilder ticketId = new StringBuilder(TICKET_PREFIX.length() + digits).append(TICKET_PREFIX);
+        String value = Long.toString(number);
+        for (int i = value.length(); i < digits; i++) {
+            ticketId.append('0');
+        }
+        return ticketId.append(value).toString();
+    }
+
+    /**
+     * Gets the favorite attraction of the visitor at the given position.
+     *
+     * @param index the position of the visitor in the history
+     * @return the favorite attraction of the visitor
+     * @throws IndexOutOfBoundsException if the index is not within the history
+     */
+    public String getFavoriteAttraction(int index) {
+        Objects.checkIndex(index, size);
+        return attractions.get(attractionIds[index]);
+    }
+
+    /**
+     * Returns an iterator that creates a {@code Visitor} for each entry of the history, in order.
+     *
+     * @return an iterator over the visitors of the history
+     */
+    @Override
+    public Iterator<Visitor> iterator() {
+        return new Iterator<Visitor>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Visitor next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return getVisitor(next++);
+            }
+        };
+    }
+
+    /**
+     * Packs a ticket ID of the form {@code TICKET<digits>} into a {@code long}. The number of
+     * digits is kept in the top byte so that leading zeros are restored when the ID is unpacked.
+     *
+     * @return the packed ticket ID, or {@code NOT_PACKED} if the ID does not have that form
+     */
+    private static long packTicketId(String ticketId) {
+        if (ticketId == null || !ticketId.startsWith(TICKET_PREFIX)) {
+            return NOT_PACKED;
+        }
+
+        int digits = ticketId.length() - TICKET_PREFIX.length();
+        if (digits == 0 || digits > MAX_TICKET_DIGITS) {
+            return NOT_PACKED;
+        }
+
+        long number = 0;
+        for (int i = TICKET_PREFIX.length(); i < ticketId.length(); i++) {
+            char c = ticketId.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_PACKED;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return ((long) digits << 56) | number;
+    }
+
+    /**
+     * Adds the name at the given position to the name index unless the name is already in it.
+     * Entries of the table hold the position of the first visitor with a name, plus one, and 0
+     * marks an empty entry. The table is kept at most half full.
+     */
+    private void indexName(int index) {
+        int entry = findName(names[index]);
+        if (nameTable[entry] != 0) {
+            return;
+        }
+
+        nameTable[entry] = index + 1;
+        if (++distinctNames * 2 > nameTable.length) {
+            int[] old = nameTable;
+            nameTable = new int[old.length * 2];
+            for (int position : old) {
+                if (position != 0) {
+                    nameTable[findName(names[position - 1])] = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the entry of the name table that holds the given name, or the empty entry where it
+     * belongs.
+     */
+    private int findName(String name) {
+        int mask = nameTable.length - 1;
+        int hash = Objects.hashCode(name);
+        int entry = (hash ^ (hash >>> 16)) & mask;
+        while (nameTable[entry] != 0 && !Objects.equals(names[nameTable[entry] - 1], name)) {
+            entry = (entry + 1) & mask;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the dictionary index of an attraction, adding it to the dictionary if it is new.
+     */
+    private int attractionId(String attraction) {
+        Integer id = attractionIndex.get(attraction);
+        if (id == null) {
+            id = attractions.size();
+            attractions.add(attraction);
+            attractionIndex.put(attraction, id);
+        }
+        return id;
+    }
+
+    /**
+     * Grows every column by half of its current length.
+     */
+    private void grow() {
+        int capacity = ages.length + (ages.length >> 1) + 1;
+        names = Arrays.copyOf(names, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+        packedTicketIds = Arrays.copyOf(packedTicketIds, capacity);
+        attractionIds = Arrays.copyOf(attractionIds, capacity);
+    }
+}
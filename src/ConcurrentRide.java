@@ -0,0 +1,606 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code ConcurrentRide} class is a thread-safe implementation of the {@code RideInterface}.
+ * Many turnstile threads may add visitors to the waiting queue while an operator thread runs
+ * the ride. Adding visitors to the queue is lock-free, while taking visitors off the queue and
+ * running a cycle are serialized so that every cycle boards a contiguous group of visitors.
+ * Queue, history and cycle events are reported to the registered {@link RideListener}s only.
+ *
+ * <p>The waiting queue holds at most {@code maxCapacity} visitors, counted with a semaphore of
+ * free places. Turnstile threads can be turned away at once, or wait a limited time for a cycle
+ * to make room with {@link #offerVisitor(Visitor, long, TimeUnit)}.
+ */
+public class ConcurrentRide implements RideInterface {
+    private static final RideListener[] NO_LISTENERS = new RideListener[0];
+    private static final int UNBOUNDED_PLACES = Integer.MAX_VALUE / 2;
+
+    private volatile String rideName;
+    private volatile int maxCapacity;
+    private volatile Employee employee;
+    private volatile int maxRider;
+    private final ConcurrentLinkedQueue<Visitor> waitingQueue;
+    private final LinkedList<Visitor> visitors;
+    private final Map<String, Integer> nameIndex;
+    private final AtomicInteger numOfCycles;
+    private final ReentrantLock cycleLock;
+    private final QueuePlaces queuePlaces;
+    private final LongAdder rejectedVisitors;
+    private volatile RideListener[] listeners;
+
+    /**
+     * Default constructor for the {@code ConcurrentRide} class. Initializes fields to default values.
+     */
+    public ConcurrentRide() {
+        this("", 0, null);
+    }
+
+    /**
+     * Constructor that initializes the ride with a name, capacity, and assigned employee.
+     *
+     * @param rideName the name of the ride
+     * @param maxCapacity the maximum capacity of the ride
+     * @param employee the employee assigned to operate the ride
+     */
+    public ConcurrentRide(String rideName, int maxCapacity, Employee employee) {
+        this.rideName = rideName;
+        this.maxCapacity = maxCapacity;
+        this.employee = employee;
+        this.waitingQueue = new ConcurrentLinkedQueue<>();
+        this.visitors = new LinkedList<>();
+        this.nameIndex = new HashMap<>();
+        this.numOfCycles = new AtomicInteger();
+        this.cycleLock = new ReentrantLock();
+        this.queuePlaces = new QueuePlaces(placesFor(maxCapacity));
+        this.rejectedVisitors = new LongAdder();
+        this.listeners = NO_LISTENERS;
+    }
+
+    /**
+     * Gets the name of the ride.
+     *
+     * @return the name of the ride
+     */
+    @Override
+    public String getRideName() {
+        return rideName;
+    }
+
+    /**
+     * Sets the name of the ride.
+     *
+     * @param rideName the name of the ride
+     */
+    public void setRideName(String rideName) {
+        this.rideName = rideName;
+    }
+
+    /**
+     * Gets the maximum capacity of the ride, which is the largest number of visitors the waiting
+     * queue holds. A capacity of zero or less means the queue is not bounded.
+     *
+     * @return the maximum capacity of the ride
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Sets the maximum capacity of the ride. Visitors already waiting stay in the queue when the
+     * capacity is lowered below their number; new visitors are turned away until it has room.
+     *
+     * @param maxCapacity the maximum capacity of the ride, or zero for an unbounded queue
+     */
+    public synchronized void setMaxCapacity(int maxCapacity) {
+        int change = placesFor(maxCapacity) - placesFor(this.maxCapacity);
+        this.maxCapacity = maxCapacity;
+        if (change > 0) {
+            queuePlaces.release(change);
+        } else if (change < 0) {
+            queuePlaces.reduce(-change);
+        }
+    }
+
+    /**
+     * Gets the employee assigned to the ride.
+     *
+     * @return the employee assigned to operate the ride
+     */
+    public Employee getEmployee() {
+        return employee;
+    }
+
+    /**
+     * Sets the employee assigned to the ride.
+     *
+     * @param employee the employee to assign to the ride
+     */
+    public void setEmployee(Employee employee) {
+        this.employee = employee;
+    }
+
+    /**
+     * Gets the maximum number of riders that can be processed in one cycle.
+     *
+     * @return the maximum number of riders per cycle
+     */
+    public int getMaxRider() {
+        return maxRider;
+    }
+
+    /**
+     * Sets the maximum number of riders that can be processed in one cycle.
+     *
+     * @param maxRider the maximum number of riders per cycle
+     */
+    public void setMaxRider(int maxRider) {
+        this.maxRider = maxRider;
+    }
+
+    /**
+     * Gets the number of ride cycles completed.
+     *
+     * @return the number of cycles completed
+     */
+    public int getNumOfCycles() {
+        return numOfCycles.get();
+    }
+
+    /**
+     * Gets a snapshot of the visitors who have taken the ride.
+     *
+     * @return a copy of the list of visitors who have ridden the attraction
+     */
+    public List<Visitor> getVisitors() {
+        synchronized (visitors) {
+            return new ArrayList<>(visitors);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified of the queue, history and cycle events of this ride.
+     * Listeners are called on the thread that performed the operation.
+     *
+     * @param listener the listener to be added
+     */
+    public synchronized void addRideListener(RideListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        RideListener[] updated = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        updated[updated.length - 1] = listener;
+        this.listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener previously added with {@link #addRideListener(RideListener)}.
+     *
+     * @param listener the listener to be removed
+     */
+    public synchronized void removeRideListener(RideListener listener) {
+        List<RideListener> remaining = new ArrayList<>(Arrays.asList(this.listeners));
+        if (remaining.remove(listener)) {
+            this.listeners = remaining.isEmpty() ? NO_LISTENERS : remaining.toArray(NO_LISTENERS);
+        }
+    }
+
+    /**
+     * Adds a visitor to the ride's waiting queue, or turns the visitor away if the queue is at
+     * the ride's capacity. This method never blocks and may be called from any number of threads
+     * at the same time.
+     *
+     * @param visitor the visitor to be added to the queue
+     */
+    @Override
+    public void addVisitorToQueue(Visitor visitor) {
+        offerVisitor(visitor);
+    }
+
+    /**
+     * Adds a visitor to the ride's waiting queue unless the queue is at the ride's capacity.
+     * This method never blocks.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @return {@code true} if the visitor was added, {@code false} if the queue is full or the
+     *         visitor is {@code null}
+     */
+    @Override
+    public boolean offerVisitor(Visitor visitor) {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return false;
+        }
+        return enqueue(visitor, queuePlaces.tryAcquire());
+    }
+
+    /**
+     * Adds a visitor to the ride's waiting queue, waiting up to the given time for a cycle to
+     * make room if the queue is at the ride's capacity.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @param timeout the longest time to wait for room
+     * @param unit the unit of the timeout
+     * @return {@code true} if the visitor was added, {@code false} if the queue stayed full or
+     *         the visitor is {@code null}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean offerVisitor(Visitor visitor, long timeout, TimeUnit unit) throws InterruptedException {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return false;
+        }
+        return enqueue(visitor, queuePlaces.tryAcquire(timeout, unit));
+    }
+
+    /**
+     * Returns the number of visitors turned away because the waiting queue was at the ride's
+     * capacity.
+     *
+     * @return the number of rejected visitors
+     */
+    @Override
+    public long getRejectedVisitors() {
+        return rejectedVisitors.sum();
+    }
+
+    /**
+     * Adds a group of visitors to the ride's waiting queue. The visitors are linked together
+     * first and then appended to the queue in one step, so they stay contiguous in the queue.
+     * Visitors who do not fit within the ride's capacity are turned away.
+     *
+     * @param visitors the visitors to be added to the queue
+     */
+    @Override
+    public void addVisitorsToQueue(Collection<? extends Visitor> visitors) {
+        List<Visitor> batch = new ArrayList<>(visitors.size());
+        List<Visitor> rejected = null;
+        int nulls = 0;
+        for (Visitor visitor : visitors) {
+            if (visitor == null) {
+                nulls++;
+            } else if (queuePlaces.tryAcquire()) {
+                batch.add(visitor);
+            } else {
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                }
+                rejected.add(visitor);
+            }
+        }
+        if (rejected != null) {
+            rejectedVisitors.add(rejected.size());
+        }
+        if (!batch.isEmpty()) {
+            this.waitingQueue.addAll(batch);
+        }
+
+        RideListener[] current = this.listeners;
+        for (RideListener listener : current) {
+            for (int i = 0; i < nulls; i++) {
+                listener.onNullVisitor(this);
+            }
+            if (rejected != null) {
+                for (Visitor visitor : rejected) {
+                    listener.onQueueFull(this, visitor);
+                }
+            }
+            for (Visitor visitor : batch) {
+                listener.onVisitorAddedToQueue(this, visitor);
+            }
+        }
+    }
+
+    /**
+     * Removes up to the given number of visitors from the front of the queue, taking the cycle
+     * lock only once.
+     *
+     * @param buffer the collection that receives the removed visitors
+     * @param maxVisitors the maximum number of visitors to be removed
+     * @return the number of visitors removed from the queue
+     */
+    @Override
+    public int drainQueue(Collection<? super Visitor> buffer, int maxVisitors) {
+        List<Visitor> removed = new ArrayList<>();
+        cycleLock.lock();
+        try {
+            pollQueue(removed, maxVisitors);
+        } finally {
+            cycleLock.unlock();
+        }
+
+        buffer.addAll(removed);
+        RideListener[] current = this.listeners;
+        for (Visitor visitor : removed) {
+            for (RideListener listener : current) {
+                listener.onVisitorRemovedFromQueue(this, visitor);
+            }
+        }
+        return removed.size();
+    }
+
+    /**
+     * Removes and returns the visitor at the front of the queue.
+     *
+     * @return the visitor removed from the queue, or {@code null} if the queue is empty
+     */
+    @Override
+    public Visitor removeVisitorFromQueue() {
+        Visitor visitor;
+        cycleLock.lock();
+        try {
+            visitor = waitingQueue.poll();
+        } finally {
+            cycleLock.unlock();
+        }
+        if (visitor != null) {
+            queuePlaces.release();
+        }
+
+        for (RideListener listener : this.listeners) {
+            if (visitor == null) {
+                listener.onQueueEmpty(this);
+            } else {
+                listener.onVisitorRemovedFromQueue(this, visitor);
+            }
+        }
+        return visitor;
+    }
+
+    /**
+     * Prints the details of all visitors currently in the waiting queue. Visitors added while
+     * the queue is being printed may or may not be shown.
+     */
+    @Override
+    public void printQueue() {
+        if (waitingQueue.isEmpty()) {
+            System.out.println("Waiting queue is empty.");
+            return;
+        }
+
+        System.out.println("Waiting queue:");
+        for (Visitor visitor : waitingQueue) {
+            System.out.println(visitor);
+        }
+    }
+
+    /**
+     * Runs one cycle of the ride, boarding up to the maximum number of riders. The riders are
+     * taken off the queue under the cycle lock, so concurrent cycles never interleave their riders.
+     */
+    @Override
+    public void runOneCycle() {
+        if (this.employee == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNoOperator(this);
+            }
+            return;
+        }
+
+        int seats = this.maxRider;
+        List<Visitor> riders = new ArrayList<>(Math.max(seats, 0));
+        cycleLock.lock();
+        try {
+            pollQueue(riders, seats);
+            if (riders.isEmpty()) {
+                for (RideListener listener : this.listeners) {
+                    listener.onNoWaitingVisitors(this);
+                }
+                return;
+            }
+
+            appendToHistory(riders);
+            numOfCycles.incrementAndGet();
+        } finally {
+            cycleLock.unlock();
+        }
+
+        RideListener[] current = this.listeners;
+        for (Visitor rider : riders) {
+            for (RideListener listener : current) {
+                listener.onVisitorRemovedFromQueue(this, rider);
+            }
+        }
+        for (Visitor rider : riders) {
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToHistory(this, rider);
+            }
+        }
+        for (RideListener listener : current) {
+            listener.onCycleCompleted(this, riders.size());
+        }
+    }
+
+    /**
+     * Adds a visitor to the ride history after they have ridden the attraction.
+     *
+     * @param visitor the visitor to be added to the ride history
+     */
+    @Override
+    public void addVisitorToHistory(Visitor visitor) {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return;
+        }
+
+        synchronized (visitors) {
+            visitors.add(visitor);
+            nameIndex.merge(visitor.getName(), 1, Integer::sum);
+        }
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorAddedToHistory(this, visitor);
+        }
+    }
+
+    /**
+     * Adds a group of visitors to the ride history while holding the history lock only once.
+     *
+     * @param visitors the visitors to be added to the ride history
+     */
+    @Override
+    public void addVisitorsToHistory(Collection<? extends Visitor> visitors) {
+        List<Visitor> batch = new ArrayList<>(visitors.size());
+        int nulls = 0;
+        for (Visitor visitor : visitors) {
+            if (visitor == null) {
+                nulls++;
+            } else {
+                batch.add(visitor);
+            }
+        }
+        appendToHistory(batch);
+
+        RideListener[] current = this.listeners;
+        for (RideListener listener : current) {
+            for (int i = 0; i < nulls; i++) {
+                listener.onNullVisitor(this);
+            }
+            for (Visitor visitor : batch) {
+                listener.onVisitorAddedToHistory(this, visitor);
+            }
+        }
+    }
+
+    /**
+     * Checks if a visitor has already taken the ride.
+     *
+     * @param visitor the visitor to be checked
+     * @return {@code true} if the visitor has taken the ride, otherwise {@code false}
+     */
+    @Override
+    public boolean checkVisitorFromHistory(Visitor visitor) {
+        if (visitor == null) {
+            System.out.println("Visitor is null.");
+            return false;
+        }
+
+        boolean found;
+        synchronized (visitors) {
+            found = nameIndex.containsKey(visitor.getName());
+        }
+
+        if (found) {
+            System.out.println(visitor.getName() + " has taken the Ride.");
+            return true;
+        }
+
+        System.out.println(visitor.getName() + " has not taken the Ride.");
+        return false;
+    }
+
+    /**
+     * Returns the number of visitors who have taken the ride.
+     *
+     * @return the number of visitors who have ridden the attraction
+     */
+    @Override
+    public int numberOfVisitors() {
+        int size;
+        synchronized (visitors) {
+            size = visitors.size();
+        }
+        System.out.println(size + " of visitors has taken the Ride.");
+        return size;
+    }
+
+    /**
+     * Prints the ride history by displaying the list of visitors who have taken the ride.
+     */
+    @Override
+    public void printRideHistory() {
+        List<Visitor> history = getVisitors();
+        if (history.isEmpty()) {
+            System.out.println("Ride history is empty.");
+            return;
+        }
+
+        System.out.println("Ride history:");
+        for (Visitor visitor : history) {
+            System.out.println(visitor);
+        }
+    }
+
+    /**
+     * Moves up to the given number of visitors from the queue to a list. The caller must hold
+     * the cycle lock.
+     */
+    private void pollQueue(List<Visitor> riders, int maxVisitors) {
+        Visitor visitor;
+        int removed = 0;
+        while (removed < maxVisitors && (visitor = waitingQueue.poll()) != null) {
+            riders.add(visitor);
+            removed++;
+        }
+        if (removed > 0) {
+            queuePlaces.release(removed);
+        }
+    }
+
+    /**
+     * Adds a visitor to the queue if a place was acquired for it, otherwise counts it as rejected,
+     * and reports the outcome to the listeners.
+     */
+    private boolean enqueue(Visitor visitor, boolean placeAcquired) {
+        if (!placeAcquired) {
+            rejectedVisitors.increment();
+            for (RideListener listener : this.listeners) {
+                listener.onQueueFull(this, visitor);
+            }
+            return false;
+        }
+
+        this.waitingQueue.offer(visitor);
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorAddedToQueue(this, visitor);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of places in the queue for a capacity.
+     */
+    private static int placesFor(int maxCapacity) {
+        return maxCapacity > 0 ? maxCapacity : UNBOUNDED_PLACES;
+    }
+
+    /**
+     * The free places in the waiting queue. The number of places can be lowered below the number
+     * of visitors waiting, in which case places are only handed out again once enough visitors
+     * have left the queue.
+     */
+    private static final class QueuePlaces extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private QueuePlaces(int places) {
+            super(places);
+        }
+
+        private void reduce(int places) {
+            reducePermits(places);
+        }
+    }
+
+    /**
+     * Appends visitors to the history and the name index under the history lock.
+     */
+    private void appendToHistory(List<Visitor> riders) {
+        synchronized (visitors) {
+            for (Visitor rider : riders) {
+                visitors.add(rider);
+                nameIndex.merge(rider.getName(), 1, Integer::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.PrintStream;
+
+/**
+ * The {@code ConsoleRideListener} class implements the {@link RideListener} interface and prints
+ * every ride event as a line of text, using the same messages the ride has always printed.
+ */
+public class ConsoleRideListener implements RideListener {
+    private final PrintStream out;
+
+    /**
+     * Default constructor that prints the events to {@code System.out}.
+     */
+    public ConsoleRideListener() {
+        this(System.out);
+    }
+
+    /**
+     * Constructor that prints the events to the given stream.
+     *
+     * @param out the stream the event messages are printed to
+     */
+    public ConsoleRideListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onVisitorAddedToQueue(RideInterface ride, Visitor visitor) {
+        out.println("Add Visitor To Queue successfully. Visitor: " + visitor.getName());
+    }
+
+    @Override
+    public void onQueueFull(RideInterface ride, Visitor visitor) {
+        out.println("Waiting queue is full. Visitor not added: " + visitor.getName());
+    }
+
+    @Override
+    public void onVisitorRemovedFromQueue(RideInterface ride, Visitor visitor) {
+        out.println(visitor.getName() + " has been removed from the queue.");
+    }
+
+    @Override
+    public void onQueueEmpty(RideInterface ride) {
+        out.println("Waiting queue is empty.");
+    }
+
+    @Override
+    public void onVisitorAddedToHistory(RideInterface ride, Visitor visitor) {
+        out.println(visitor.getName() + " has taken the Ride.");
+    }
+
+    @Override
+    public void onCycleCompleted(RideInterface ride, int riders) {
+        out.println("Ride one cycle completed.");
+    }
+
+    @Override
+    public void onNoOperator(RideInterface ride) {
+        out.println("No operator assigned. Ride cannot be run.");
+    }
+
+    @Override
+    public void onNoWaitingVisitors(RideInterface ride) {
+        out.println("There are no waiting visitors in the queue, the ride cannot be run.");
+    }
+
+    @Override
+    public void onNullVisitor(RideInterface ride) {
+        out.println("Visitor is null.");
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@code GuestLoadGenerator} class produces a stream of guests arriving at the rides of a
+ * park, for capacity tests and simulations. Arrivals form a Poisson process whose rate follows a
+ * peak-hour curve: the rate at the peak is given, and the curve gives the share of that rate for
+ * every hour after opening. Each arrival is a {@link Visitor} whose favorite attraction is the
+ * ride they are heading for, chosen from a weighted attraction mix. A share of the arrivals are
+ * repeat riders, guests who arrived before and come back with the same ticket.
+ *
+ * <p>A generator can also replay a recorded ride history file instead of making up guests: the
+ * visitors of the file arrive in file order, at times drawn from the same process, and the stream
+ * ends with the last visitor of the file.
+ */
+public class GuestLoadGenerator {
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final int MAX_RETURNING_GUESTS = 1 << 16;
+    private static final String[] DEFAULT_ATTRACTIONS = {
+        "Ferris Wheel", "Roller Coaster", "Water Ride", "Haunted House", "Carousel"
+    };
+
+    private final double peakArrivalsPerMinute;
+    private final Random random;
+    private final List<Visitor> recorded;
+    private final List<Visitor> returningGuests;
+    private double[] peakCurve;
+    private String[] attractions;
+    private double[] cumulativeWeights;
+    private double repeatRiderRate;
+    private double time;
+    private int nextRecorded;
+    private long nextGuest;
+
+    /**
+     * Constructor that creates a generator of new guests. By default the rate is the peak rate
+     * all day, the five attractions of the park are equally popular and there are no repeat
+     * riders.
+     *
+     * @param peakArrivalsPerMinute the arrival rate at the peak, in guests per minute
+     * @param seed the seed of the random numbers, so that a run can be repeated
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    public GuestLoadGenerator(double peakArrivalsPerMinute, long seed) {
+        this(peakArrivalsPerMinute, seed, null);
+    }
+
+    private GuestLoadGenerator(double peakArrivalsPerMinute, long seed, List<Visitor> recorded) {
+        if (!(peakArrivalsPerMinute > 0)) {
+            throw new IllegalArgumentException("Arrival rate must be positive: " + peakArrivalsPerMinute);
+        }
+
+        this.peakArrivalsPerMinute = peakArrivalsPerMinute;
+        this.random = new Random(seed);
+        this.recorded = recorded;
+        this.returningGuests = new ArrayList<>();
+        this.peakCurve = new double[] {1.0};
+        setAttractionMix(DEFAULT_ATTRACTIONS, null);
+    }
+
+    /**
+     * Creates a generator that replays the visitors of a ride history file in the CSV format of
+     * {@link RideHistoryCsv}.
+     *
+     * @param filePath the path to the ride history file
+     * @param peakArrivalsPerMinute the arrival rate at the peak, in guests per minute
+     * @param seed the seed of the random numbers, so that a run can be repeated
+     * @return a generator that ends after the last visitor of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static GuestLoadGenerator fromHistory(String filePath, double peakArrivalsPerMinute, long seed)
+            throws IOException {
+        List<Visitor> visitors = new ArrayList<>();
+        RideHistoryCsv.read(filePath, visitors::add);
+        return new GuestLoadGenerator(peakArrivalsPerMinute, seed, visitors);
+    }
+
+    /**
+     * Sets the peak-hour curve. The first value applies to the first hour after opening, the next
+     * value to the second hour and so on, and the curve starts again after its last hour.
+     *
+     * @param hourlyLoad the arrival rate of every hour as a share of the peak rate, between 0 and 1
+     * @throws IllegalArgumentException if the curve is empty, a share is not between 0 and 1, or
+     *                                  all shares are 0
+     */
+    public void setPeakCurve(double... hourlyLoad) {
+        if (hourlyLoad.length == 0 || Arrays.stream(hourlyLoad).anyMatch(load -> !(load >= 0 && load <= 1))
+                || Arrays.stream(hourlyLoad).allMatch(load -> load == 0)) {
+            throw new IllegalArgumentException("Invalid peak curve " + Arrays.toString(hourlyLoad));
+        }
+
+        this.peakCurve = hourlyLoad.clone();
+    }
+
+    /**
+     * Sets the attractions guests head for and how popular each one is.
+     *
+     * @param attractions the names of the attractions
+     * @param weights the relative popularity of each attraction, or {@code null} if they are
+     *                equally popular
+     * @throws IllegalArgumentException if there are no attractions, the weights do not match the
+     *                                  attractions, or a weight is negative
+     */
+    public void setAttractionMix(String[] attractions, double[] weights) {
+        if (attractions.length == 0 || (weights != null && weights.length != attractions.length)) {
+            throw new IllegalArgumentException("Invalid attraction mix of " + attractions.length + " attractions");
+        }
+
+        double[] cumulative = new double[attractions.length];
+        double total = 0;
+        for (int i = 0; i < attractions.length; i++) {
+            double weight = weights != null ? weights[i] : 1;
+            if (!(weight >= 0)) {
+                throw new IllegalArgumentException("Invalid weight " + weight + " for " + attractions[i]);
+            }
+            total += weight;
+            cumulative[i] = total;
+        }
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("At least one attraction must have a positive weight");
+        }
+
+        this.attractions = attractions.clone();
+        this.cumulativeWeights = cumulative;
+    }
+
+    /**
+     * Sets the share of arrivals that are repeat riders.
+     *
+     * @param repeatRiderRate the share of arrivals that are guests who arrived before, between 0 and 1
+     * @throws IllegalArgumentException if the share is not between 0 and 1
+     */
+    public void setRepeatRiderRate(double repeatRiderRate) {
+        if (!(repeatRiderRate >= 0 && repeatRiderRate <= 1)) {
+            throw new IllegalArgumentException("Invalid repeat rider rate " + repeatRiderRate);
+        }
+
+        this.repeatRiderRate = repeatRiderRate;
+    }
+
+    /**
+     * Generates the next arrival. Candidate arrivals are drawn at the peak rate and kept with the
+     * share of the peak-hour curve at their time, which thins the stream to the rate of the curve.
+     *
+     * @return the next arrival, or {@code null} if the replayed history has no more visitors
+     */
+    public Arrival next() {
+        if (recorded != null && nextRecorded >= recorded.size()) {
+            return null;
+        }
+
+        double meanGap = 60_000 / peakArrivalsPerMinute;
+        do {
+            time += -Math.log(1 - random.nextDouble()) * meanGap;
+        } while (random.nextDouble() >= peakCurve[(int) ((long) time / HOUR % peakCurve.length)]);
+
+        Visitor visitor = recorded != null ? recorded.get(nextRecorded++) : nextGuest();
+        return new Arrival((long) time, visitor);
+    }
+
+    /**
+     * Gets the time of the last arrival.
+     *
+     * @return the time of the last arrival, in milliseconds after opening
+     */
+    public long getTime() {
+        return (long) time;
+    }
+
+    /**
+     * Makes up a new guest or brings back a guest who arrived before.
+     */
+    private Visitor nextGuest() {
+        String attraction = attractions[chooseAttraction()];
+        if (!returningGuests.isEmpty() && random.nextDouble() < repeatRiderRate) {
+            Visitor guest = returningGuests.get(random.nextInt(returningGuests.size()));
+            return new Visitor(guest.getName(), guest.getAge(), guest.getPhoneNumber(), guest.getTicketId(),
+                    attraction);
+        }
+
+        long number = nextGuest++;
+        Visitor guest = new Visitor("Guest " + number, 5 + random.nextInt(70),
+                "555-" + (100 + random.nextInt(900)) + "-" + (1000 + random.nextInt(9000)),
+                "TICKET" + number, attraction);
+        if (returningGuests.size() < MAX_RETURNING_GUESTS) {
+            returningGuests.add(guest);
+        } else {
+            returningGuests.set(random.nextInt(MAX_RETURNING_GUESTS), guest);
+        }
+        return guest;
+    }
+
+    private int chooseAttraction() {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        index = index >= 0 ? index + 1 : -index - 1;
+        // Skip attractions with no weight, whose cumulative weight equals the one before them.
+        while (index < cumulativeWeights.length - 1
+                && cumulativeWeights[index] == (index > 0 ? cumulativeWeights[index - 1] : 0)) {
+            index++;
+        }
+        return Math.min(index, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * A guest arriving at the park at a point in time.
+     */
+    public static final class Arrival {
+        private final long time;
+        private final Visitor visitor;
+
+        private Arrival(long time, Visitor visitor) {
+            this.time = time;
+            this.visitor = visitor;
+        }
+
+        /**
+         * Gets the time of the arrival.
+         *
+         * @return the time of the arrival, in milliseconds after opening
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Gets the arriving guest, whose favorite attraction is the ride they are heading for.
+         *
+         * @return the arriving visitor
+         */
+        public Visitor getVisitor() {
+            return visitor;
+        }
+    }
+}
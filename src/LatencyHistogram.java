@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@code LatencyHistogram} class counts durations in logarithmic buckets, in the style of an
+ * HDR histogram. Values below 32 have a bucket each; above that, every power of two is split into
+ * 16 buckets, so a recorded value is known to within about 6%.
+ *
+ * <p>A histogram has a single writer: values are recorded by one thread at a time, such as the
+ * thread running a ride, which lets recording use ordered plain stores instead of atomic
+ * read-modify-write operations. A {@link Snapshot} can be taken from any thread at any time
+ * without stopping the writer.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Default constructor that creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.totalCount = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records one value. Negative values are recorded as zero. Only one thread may record at a
+     * time; values recorded concurrently by several threads may be lost.
+     *
+     * @param value the value to be recorded, usually in nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        // The writer is the only thread that changes the counters, so a read followed by an
+        // ordered store cannot lose an update, and readers never see a torn value.
+        int index = bucketIndex(value);
+        counts.lazySet(index, counts.get(index) + 1);
+        totalCount.lazySet(totalCount.get() + 1);
+        sum.lazySet(sum.get() + value);
+        if (value > max.get()) {
+            max.lazySet(value);
+        }
+    }
+
+    /**
+     * Takes a copy of the current counts. Values recorded while the copy is taken may or may not
+     * be included.
+     *
+     * @return a snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, totalCount.get(), sum.get(), max.get());
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     */
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the smallest value counted in a bucket.
+     */
+    private static long bucketLowerBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * The {@code Snapshot} class is an immutable copy of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long totalCount, long sum, long max) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return totalCount;
+        }
+
+        /**
+         * Gets the average of the recorded values.
+         *
+         * @return the mean, or zero if nothing was recorded
+         */
+        public double getMean() {
+            return totalCount == 0 ? 0 : (double) sum / totalCount;
+        }
+
+        /**
+         * Gets the largest recorded value.
+         *
+         * @return the maximum, or zero if nothing was recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the value below which the given percentage of the recorded values fall. The
+         * result is the lower bound of the bucket holding that value.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the value at the percentile, or zero if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long recorded = 0;
+            for (long count : counts) {
+                recorded += count;
+            }
+            if (recorded == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketLowerBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Count=%d, Mean=%.1f, P50=%d, P99=%d, P999=%d, Max=%d",
+                    totalCount, getMean(), getValueAtPercentile(50), getValueAtPercentile(99),
+                    getValueAtPercentile(99.9), max);
+        }
+    }
+}
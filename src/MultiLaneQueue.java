@@ -0,0 +1,521 @@
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * The {@code MultiLaneQueue} class is a waiting queue with one FIFO lane per {@link QueueLane}.
+ * Visitors added without a lane join the standard lane. Removing a visitor picks the lane with a
+ * smooth weighted round-robin: over any stretch of time in which several lanes have visitors
+ * waiting, each lane is served in proportion to its weight, and the lanes are interleaved rather
+ * than served in bursts. Lanes without visitors are skipped, so no seat is left empty while a
+ * party that fits in it is waiting. Adding and removing take constant time.
+ *
+ * <p>Visitors queue in parties that ride together. A visitor added on their own is a party of
+ * one, and a visitor can join the party of the visitor added to the lane before them. The lanes
+ * take turns by party: once a party is chosen, its members are removed one after another. When
+ * the seats left in a cycle are given to {@link #poll(int)}, only lanes whose next party fits in
+ * them take a turn. The single-rider lane only takes a turn when no other lane can, so single
+ * riders fill the seats that the party at the front of the other lanes is too large for, and
+ * ride whenever the other lanes are empty. Its weight is not used.
+ *
+ * <p>Iteration returns the fast-pass lane first, then the standard lane, then the single-rider
+ * lane. The queue does not accept {@code null} visitors.
+ *
+ * <p>Every place in the queue can carry the time its visitor joined, kept next to the visitor
+ * rather than in it, so that a visitor object shared by several queues, or queued twice, keeps a
+ * separate time for each place. After {@link #poll()} the time of the removed place is available
+ * from {@link #getLastQueuedAt()}.
+ */
+public class MultiLaneQueue extends AbstractQueue<Visitor> {
+    private static final QueueLane[] LANES = QueueLane.values();
+    private static final int SINGLE_RIDER_LANE = 1 << QueueLane.SINGLE_RIDER.ordinal();
+
+    private final ArrayDeque<Visitor>[] lanes;
+    private final Timestamps[] queuedAt;
+    private final PartySizes[] parties;
+    private final int[] weights;
+    private final int[] currentWeights;
+    private int nonEmptyLanes;
+    private int size;
+    private long lastQueuedAt;
+    private int boardingLane;
+    private int boardingLeft;
+
+    /**
+     * Default constructor that creates an empty queue with the default lane weights.
+     */
+    @SuppressWarnings("unchecked")
+    public MultiLaneQueue() {
+        this.lanes = (ArrayDeque<Visitor>[]) new ArrayDeque<?>[LANES.length];
+        this.weights = new int[LANES.length];
+        this.currentWeights = new int[LANES.length];
+        this.queuedAt = new Timestamps[LANES.length];
+        this.parties = new PartySizes[LANES.length];
+        for (QueueLane lane : LANES) {
+            this.lanes[lane.ordinal()] = new ArrayDeque<>();
+            this.queuedAt[lane.ordinal()] = new Timestamps();
+            this.parties[lane.ordinal()] = new PartySizes();
+            this.weights[lane.ordinal()] = lane.getDefaultWeight();
+        }
+    }
+
+    /**
+     * Gets the weight of a lane.
+     *
+     * @param lane the lane
+     * @return the weight of the lane
+     */
+    public int getWeight(QueueLane lane) {
+        return weights[lane.ordinal()];
+    }
+
+    /**
+     * Sets the weight of a lane. A lane with weight 3 is served three times as often as a lane
+     * with weight 1 while both have visitors waiting.
+     *
+     * @param lane the lane
+     * @param weight the new weight of the lane, at least 1
+     * @throws IllegalArgumentException if the weight is less than 1
+     */
+    public void setWeight(QueueLane lane, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Lane weight must be at least 1: " + weight);
+        }
+        weights[lane.ordinal()] = weight;
+    }
+
+    /**
+     * Gets the number of visitors waiting in a lane.
+     *
+     * @param lane the lane
+     * @return the number of visitors in the lane
+     */
+    public int size(QueueLane lane) {
+        return lanes[lane.ordinal()].size();
+    }
+
+    /**
+     * Adds a visitor to the end of the standard lane.
+     *
+     * @param visitor the visitor to be added
+     * @return {@code true}
+     * @throws NullPointerException if the visitor is {@code null}
+     */
+    @Override
+    public boolean offer(Visitor visitor) {
+        return offer(visitor, QueueLane.STANDARD);
+    }
+
+    /**
+     * Adds a visitor to the end of a lane.
+     *
+     * @param visitor the visitor to be added
+     * @param lane the lane the visitor joins
+     * @return {@code true}
+     * @throws NullPointerException if the visitor or the lane is {@code null}
+     */
+    public boolean offer(Visitor visitor, QueueLane lane) {
+        return offer(visitor, lane, 0);
+    }
+
+    /**
+     * Adds a visitor to the end of a lane together with the time they joined.
+     *
+     * @param visitor the visitor to be added
+     * @param lane the lane the visitor joins
+     * @param time the time the visitor joined, usually a {@link System#nanoTime()} value, or zero
+     *             if it is not recorded
+     * @return {@code true}
+     * @throws NullPointerException if the visitor or the lane is {@code null}
+     */
+    public boolean offer(Visitor visitor, QueueLane lane, long time) {
+        return offer(visitor, lane, time, false);
+    }
+
+    /**
+     * Adds a visitor to the end of a lane together with the time they joined, either as a new
+     * party or as a member of the party of the visitor added to the lane before them. A visitor
+     * whose previous visitor has already started to leave the queue starts a new party.
+     *
+     * @param visitor the visitor to be added
+     * @param lane the lane the visitor joins
+     * @param time the time the visitor joined, or zero if it is not recorded
+     * @param joinsParty {@code true} to join the party of the previous visitor of the lane
+     * @return {@code true}
+     * @throws NullPointerException if the visitor or the lane is {@code null}
+     * @throws IllegalArgumentException if a visitor would join a party in the single-rider lane
+     */
+    public boolean offer(Visitor visitor, QueueLane lane, long time, boolean joinsParty) {
+        Objects.requireNonNull(visitor, "visitor");
+        if (joinsParty && lane == QueueLane.SINGLE_RIDER) {
+            throw new IllegalArgumentException("Single riders ride alone");
+        }
+        int index = lane.ordinal();
+        lanes[index].addLast(visitor);
+        queuedAt[index].addLast(time);
+        if (joinsParty && parties[index].count > 0) {
+            parties[index].growLast();
+        } else {
+            parties[index].addLast();
+        }
+        nonEmptyLanes |= 1 << index;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the next visitor, taken from the front of the lane whose turn it is, however large
+     * their party.
+     *
+     * @return the removed visitor, or {@code null} if the queue is empty
+     */
+    @Override
+    public Visitor poll() {
+        return poll(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes the next visitor for a cycle with the given number of seats left. The rest of a
+     * party that has started to leave the queue always comes first. Otherwise the lane whose
+     * turn it is among the lanes whose next party fits in the seats starts its next party, and
+     * the single-rider lane only if no other lane's party fits.
+     *
+     * @param freeSeats the number of seats left
+     * @return the removed visitor, or {@code null} if the queue is empty or no party fits
+     */
+    public Visitor poll(int freeSeats) {
+        if (boardingLeft > 0) {
+            boardingLeft--;
+            return removeFirst(boardingLane);
+        }
+
+        int fitting = preferParties(fittingLanes(freeSeats));
+        int lane;
+        if ((fitting & (fitting - 1)) == 0) {
+            if (fitting == 0) {
+                return null;
+            }
+            // A single lane that can take a turn gains and spends its own weight, so its turn is certain.
+            lane = Integer.numberOfTrailingZeros(fitting);
+        } else {
+            lane = selectLane(fitting);
+            int total = 0;
+            for (int i = 0; i < LANES.length; i++) {
+                if ((fitting & (1 << i)) != 0) {
+                    currentWeights[i] += weights[i];
+                    total += weights[i];
+                }
+            }
+            currentWeights[lane] -= total;
+        }
+
+        boardingLane = lane;
+        boardingLeft = parties[lane].pollFirst() - 1;
+        return removeFirst(lane);
+    }
+
+    /**
+     * Gets the time the visitor last removed by {@link #poll()} joined the queue.
+     *
+     * @return the time given when the visitor was added, or zero if it was not recorded
+     */
+    public long getLastQueuedAt() {
+        return lastQueuedAt;
+    }
+
+    /**
+     * Gets the visitor that {@link #poll()} would remove next, without removing it.
+     *
+     * @return the next visitor, or {@code null} if the queue is empty
+     */
+    @Override
+    public Visitor peek() {
+        if (boardingLeft > 0) {
+            return lanes[boardingLane].peekFirst();
+        }
+        int lane = selectLane(preferParties(nonEmptyLanes));
+        return lane < 0 ? null : lanes[lane].peekFirst();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < LANES.length; i++) {
+            lanes[i].clear();
+            queuedAt[i].clear();
+            parties[i].clear();
+            currentWeights[i] = 0;
+        }
+        nonEmptyLanes = 0;
+        boardingLeft = 0;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Visitor> iterator() {
+        return new LaneIterator();
+    }
+
+    /**
+     * Removes the visitor at the front of a lane.
+     */
+    private Visitor removeFirst(int lane) {
+        Visitor visitor = lanes[lane].pollFirst();
+        lastQueuedAt = queuedAt[lane].pollFirst();
+        if (lanes[lane].isEmpty()) {
+            currentWeights[lane] = 0;
+            nonEmptyLanes &= ~(1 << lane);
+        }
+        size--;
+        return visitor;
+    }
+
+    /**
+     * Finds the lanes whose next party fits in the given number of seats.
+     *
+     * @return a bit for each lane that fits
+     */
+    private int fittingLanes(int freeSeats) {
+        int fitting = 0;
+        for (int waiting = nonEmptyLanes; waiting != 0; waiting &= waiting - 1) {
+            int lane = Integer.numberOfTrailingZeros(waiting);
+            if (parties[lane].peekFirst() <= freeSeats) {
+                fitting |= 1 << lane;
+            }
+        }
+        return fitting;
+    }
+
+    /**
+     * Leaves out the single-rider lane if any other of the given lanes can take a turn.
+     *
+     * @return a bit for each lane that may take a turn
+     */
+    private static int preferParties(int candidates) {
+        int parties = candidates & ~SINGLE_RIDER_LANE;
+        return parties != 0 ? parties : candidates;
+    }
+
+    /**
+     * Chooses the lane with the largest current weight after its next increase among the given
+     * lanes.
+     *
+     * @param candidates a bit for each lane that may be chosen
+     * @return the index of the lane, or -1 if there is no candidate
+     */
+    private int selectLane(int candidates) {
+        int best = -1;
+        int bestWeight = 0;
+        for (int i = 0; i < LANES.length; i++) {
+            if ((candidates & (1 << i)) != 0) {
+                int weight = currentWeights[i] + weights[i];
+                if (best < 0 || weight > bestWeight) {
+                    best = i;
+                    bestWeight = weight;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Iterates over the lanes in order and keeps the size in sync on removal.
+     */
+    private final class LaneIterator implements Iterator<Visitor> {
+        private int lane;
+        private Iterator<Visitor> current = lanes[0].iterator();
+        private Iterator<Visitor> last;
+        private int lastLane;
+        private int index = -1;
+        private int lastIndex;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && lane < LANES.length - 1) {
+                current = lanes[++lane].iterator();
+                index = -1;
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Visitor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = current;
+            lastLane = lane;
+            lastIndex = ++index;
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            last.remove();
+            last = null;
+            queuedAt[lastLane].remove(lastIndex);
+            if (boardingLeft > 0 && lastLane == boardingLane) {
+                if (lastIndex < boardingLeft) {
+                    boardingLeft--;
+                } else {
+                    parties[lastLane].removeMember(lastIndex - boardingLeft);
+                }
+            } else {
+                parties[lastLane].removeMember(lastIndex);
+            }
+            if (lastLane == lane) {
+                index--;
+            }
+            size--;
+            if (lanes[lastLane].isEmpty()) {
+                currentWeights[lastLane] = 0;
+                nonEmptyLanes &= ~(1 << lastLane);
+            }
+        }
+    }
+
+    /**
+     * The join times of the places of one lane, in the same order as its visitors, kept in a
+     * growable ring of {@code long} values so that recording them allocates nothing. The ring is
+     * only created once a place has a time, so a queue without times just counts its places.
+     */
+    private static final class Timestamps {
+        private long[] values;
+        private int head;
+        private int count;
+
+        private void addLast(long time) {
+            if (values == null) {
+                if (time == 0) {
+                    count++;
+                    return;
+                }
+                values = new long[Math.max(16, Integer.highestOneBit(count) << 1)];
+                head = 0;
+            } else if (count == values.length) {
+                long[] grown = new long[values.length * 2];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = values[(head + i) & (values.length - 1)];
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + count) & (values.length - 1)] = time;
+            count++;
+        }
+
+        private long pollFirst() {
+            count--;
+            if (values == null) {
+                return 0;
+            }
+            long time = values[head];
+            head = (head + 1) & (values.length - 1);
+            return time;
+        }
+
+        private void remove(int index) {
+            if (values != null) {
+                for (int i = index; i < count - 1; i++) {
+                    values[(head + i) & (values.length - 1)] = values[(head + i + 1) & (values.length - 1)];
+                }
+            }
+            count--;
+        }
+
+        private void clear() {
+            head = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * The sizes of the parties waiting in one lane, in order, one entry per party, kept in a
+     * growable ring of {@code int} values. The party that has started to leave the queue is no
+     * longer in the ring. The ring is only created once a party has more than one member, so a
+     * lane of visitors who each ride alone just counts its parties.
+     */
+    private static final class PartySizes {
+        private int[] values;
+        private int head;
+        private int count;
+
+        private void addLast() {
+            if (values != null) {
+                if (count == values.length) {
+                    grow();
+                }
+                values[(head + count) & (values.length - 1)] = 1;
+            }
+            count++;
+        }
+
+        private void growLast() {
+            if (values == null) {
+                values = new int[Math.max(16, Integer.highestOneBit(count) << 1)];
+                Arrays.fill(values, 0, count, 1);
+                head = 0;
+            }
+            values[(head + count - 1) & (values.length - 1)]++;
+        }
+
+        private int peekFirst() {
+            return values == null ? 1 : values[head];
+        }
+
+        private int pollFirst() {
+            int party = peekFirst();
+            if (values != null) {
+                head = (head + 1) & (values.length - 1);
+            }
+            count--;
+            return party;
+        }
+
+        /**
+         * Removes one member from the party it belongs to, counting members from the front of
+         * the first party in the ring, and removes the party once it has no members left.
+         */
+        private void removeMember(int member) {
+            if (values == null) {
+                count--;
+                return;
+            }
+            int party = 0;
+            while (member >= values[(head + party) & (values.length - 1)]) {
+                member -= values[(head + party) & (values.length - 1)];
+                party++;
+            }
+            if (--values[(head + party) & (values.length - 1)] == 0) {
+                for (int i = party; i < count - 1; i++) {
+                    values[(head + i) & (values.length - 1)] = values[(head + i + 1) & (values.length - 1)];
+                }
+                count--;
+            }
+        }
+
+        private void grow() {
+            int[] grown = new int[values.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = values[(head + i) & (values.length - 1)];
+            }
+            values = grown;
+            head = 0;
+        }
+
+        private void clear() {
+            head = 0;
+            count = 0;
+        }
+    }
+}
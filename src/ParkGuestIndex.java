@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@code ParkGuestIndex} class answers park-wide questions about guests without scanning the
+ * history of every ride: which rides a ticket has taken, and how many unique guests rode one ride,
+ * several rides or anything at all. It listens to the rides of the park and records every visitor
+ * added to a ride history. Every ride gets a small ride ID, and every ticket ID maps to a bitset
+ * of the IDs of the rides it has taken, so a lookup costs one hash map access whatever the size
+ * of the histories.
+ *
+ * <p>Unique guests are counted exactly from the index, and estimated with {@link HyperLogLog}
+ * sketches for the park and for each ride, which take a fixed amount of memory and can be
+ * combined for any group of rides. The index is safe to use from several threads, so it can
+ * listen to {@link ConcurrentRide}s as well. Visitors loaded into a history from a file do not
+ * raise events and are not indexed.
+ */
+public class ParkGuestIndex implements RideListener {
+    private final Map<RideInterface, Integer> rideIds;
+    private final List<RideInterface> rides;
+    private final List<HyperLogLog> rideSketches;
+    private final ConcurrentHashMap<String, long[]> ridesByTicket;
+    private final HyperLogLog parkSketch;
+
+    /**
+     * Default constructor that creates an empty index.
+     */
+    public ParkGuestIndex() {
+        this.rideIds = new ConcurrentHashMap<>();
+        this.rides = new CopyOnWriteArrayList<>();
+        this.rideSketches = new CopyOnWriteArrayList<>();
+        this.ridesByTicket = new ConcurrentHashMap<>();
+        this.parkSketch = new HyperLogLog();
+    }
+
+    /**
+     * Adds a ride to the index and gives it a ride ID. Rides are also added automatically the
+     * first time they report a visitor. The index still has to be registered as a listener of the
+     * ride to receive its visitors.
+     *
+     * @param ride the ride to be added
+     * @return the ID of the ride
+     */
+    public synchronized int addRide(RideInterface ride) {
+        Integer rideId = rideIds.get(ride);
+        if (rideId != null) {
+            return rideId;
+        }
+
+        rides.add(ride);
+        rideSketches.add(new HyperLogLog());
+        rideIds.put(ride, rides.size() - 1);
+        return rides.size() - 1;
+    }
+
+    /**
+     * Gets the ID of a ride.
+     *
+     * @param ride the ride
+     * @return the ID of the ride, or -1 if the ride is not in the index
+     */
+    public int getRideId(RideInterface ride) {
+        Integer rideId = rideIds.get(ride);
+        return rideId != null ? rideId : -1;
+    }
+
+    /**
+     * Gets the ride with an ID.
+     *
+     * @param rideId the ID of the ride
+     * @return the ride with this ID
+     */
+    public RideInterface getRide(int rideId) {
+        return rides.get(rideId);
+    }
+
+    /**
+     * Records that a visitor has taken a ride.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor added to the ride history
+     */
+    @Override
+    public void onVisitorAddedToHistory(RideInterface ride, Visitor visitor) {
+        String ticketId = visitor.getTicketId();
+        if (ticketId == null) {
+            return;
+        }
+
+        Integer knownId = rideIds.get(ride);
+        int rideId = knownId != null ? knownId : addRide(ride);
+        ridesByTicket.compute(ticketId, (ticket, taken) -> withRide(taken, rideId));
+        HyperLogLog rideSketch = rideSketches.get(rideId);
+        synchronized (rideSketch) {
+            rideSketch.add(ticketId);
+        }
+        synchronized (parkSketch) {
+            parkSketch.add(ticketId);
+        }
+    }
+
+    /**
+     * Gets the rides a ticket has taken.
+     *
+     * @param ticketId the ticket ID to be looked up
+     * @return the rides taken with this ticket, in the order of their ride IDs
+     */
+    public List<RideInterface> getRidesTaken(String ticketId) {
+        List<RideInterface> taken = new ArrayList<>();
+        long[] bits = ridesByTicket.get(ticketId);
+        if (bits == null) {
+            return taken;
+        }
+
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                taken.add(rides.get(word * Long.SIZE + Long.numberOfTrailingZeros(remaining)));
+                remaining &= remaining - 1;
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Checks whether a ticket has taken a ride.
+     *
+     * @param ticketId the ticket ID to be checked
+     * @param ride the ride to be checked
+     * @return {@code true} if a visitor with this ticket has taken the ride, otherwise {@code false}
+     */
+    public boolean hasTakenRide(String ticketId, RideInterface ride) {
+        int rideId = getRideId(ride);
+        long[] bits = ridesByTicket.get(ticketId);
+        if (rideId < 0 || bits == null || rideId / Long.SIZE >= bits.length) {
+            return false;
+        }
+        return (bits[rideId / Long.SIZE] & (1L << rideId)) != 0;
+    }
+
+    /**
+     * Counts the different rides a ticket has taken.
+     *
+     * @param ticketId the ticket ID to be looked up
+     * @return the number of different rides taken with this ticket
+     */
+    public int countRidesTaken(String ticketId) {
+        long[] bits = ridesByTicket.get(ticketId);
+        int count = 0;
+        if (bits != null) {
+            for (long word : bits) {
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the exact number of unique guests who have taken any ride.
+     *
+     * @return the number of ticket IDs in the index
+     */
+    public int getNumberOfGuests() {
+        return ridesByTicket.size();
+    }
+
+    /**
+     * Estimates the number of unique guests who have taken any ride.
+     *
+     * @return the estimated number of unique ticket IDs
+     */
+    public long estimateUniqueGuests() {
+        synchronized (parkSketch) {
+            return parkSketch.estimate();
+        }
+    }
+
+    /**
+     * Estimates the number of unique guests who have taken a ride.
+     *
+     * @param ride the ride
+     * @return the estimated number of unique ticket IDs on the ride, or 0 if the ride is not in the index
+     */
+    public long estimateUniqueGuests(RideInterface ride) {
+        int rideId = getRideId(ride);
+        if (rideId < 0) {
+            return 0;
+        }
+
+        HyperLogLog rideSketch = rideSketches.get(rideId);
+        synchronized (rideSketch) {
+            return rideSketch.estimate();
+        }
+    }
+
+    /**
+     * Estimates the number of unique guests who have taken at least one of a group of rides.
+     *
+     * @param group the rides
+     * @return the estimated number of unique ticket IDs on any of the rides
+     */
+    public long estimateUniqueGuests(Collection<? extends RideInterface> group) {
+        HyperLogLog union = new HyperLogLog();
+        for (RideInterface ride : group) {
+            int rideId = getRideId(ride);
+            if (rideId >= 0) {
+                HyperLogLog rideSketch = rideSketches.get(rideId);
+                synchronized (rideSketch) {
+                    union.merge(rideSketch);
+                }
+            }
+        }
+        return union.estimate();
+    }
+
+    /**
+     * Returns a bitset with a ride ID set. The bitset of a ticket is never changed in place, so it
+     * can be read without locking; a new one is made only the first time the ticket takes a ride.
+     */
+    private static long[] withRide(long[] bits, int rideId) {
+        int word = rideId / Long.SIZE;
+        long bit = 1L << rideId;
+        if (bits != null && word < bits.length && (bits[word] & bit) != 0) {
+            return bits;
+        }
+
+        long[] updated = new long[bits != null ? Math.max(bits.length, word + 1) : word + 1];
+        if (bits != null) {
+            System.arraycopy(bits, 0, updated, 0, bits.length);
+        }
+        updated[word] |= bit;
+        return updated;
+    }
+}
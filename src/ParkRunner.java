@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@code ParkRunner} class runs one cycle of many rides at the same time on a
+ * {@link ForkJoinPool}. The rides are split into groups that are processed by different worker
+ * threads, and every ride is handled by exactly one task, so its queue and history are only
+ * touched by one thread during a run. Once the run returns, all changes made by the workers are
+ * visible to the calling thread. The rides must not be used by other threads during a run, and
+ * their listeners are called on the worker threads.
+ */
+public class ParkRunner {
+    private static final int RIDES_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Default constructor that runs the rides on the common fork-join pool.
+     */
+    public ParkRunner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that runs the rides on the given pool.
+     *
+     * @param pool the pool whose threads run the ride cycles
+     */
+    public ParkRunner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Runs one cycle of every ride concurrently and waits until all cycles are completed.
+     *
+     * @param rides the rides to be run
+     * @return the number of riders served and the cycle count of every ride
+     */
+    public CycleReport runOneCycle(List<Ride> rides) {
+        Ride[] snapshot = rides.toArray(new Ride[0]);
+        int[] ridersServed = new int[snapshot.length];
+        int[] numOfCycles = new int[snapshot.length];
+        pool.invoke(new CycleTask(snapshot, ridersServed, numOfCycles, 0, snapshot.length));
+        return new CycleReport(ridersServed, numOfCycles);
+    }
+
+    /**
+     * Runs the cycles of a range of rides, splitting the range while it is large.
+     */
+    private static final class CycleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Ride[] rides;
+        private final int[] ridersServed;
+        private final int[] numOfCycles;
+        private final int from;
+        private final int to;
+
+        private CycleTask(Ride[] rides, int[] ridersServed, int[] numOfCycles, int from, int to) {
+            this.rides = rides;
+            this.ridersServed = ridersServed;
+            this.numOfCycles = numOfCycles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > RIDES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CycleTask(rides, ridersServed, numOfCycles, from, middle),
+                        new CycleTask(rides, ridersServed, numOfCycles, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                Ride ride = rides[i];
+                ride.runOneCycle();
+                ridersServed[i] = ride.getLastCycleRiders();
+                numOfCycles[i] = ride.getNumOfCycles();
+            }
+        }
+    }
+
+    /**
+     * The {@code CycleReport} class holds the results of running one cycle of many rides.
+     * The values of a ride are at the position the ride had in the list passed to the runner.
+     */
+    public static final class CycleReport {
+        private final int[] ridersServed;
+        private final int[] numOfCycles;
+        private final long totalRidersServed;
+
+        private CycleReport(int[] ridersServed, int[] numOfCycles) {
+            this.ridersServed = ridersServed;
+            this.numOfCycles = numOfCycles;
+            long total = 0;
+            for (int riders : ridersServed) {
+                total += riders;
+            }
+            this.totalRidersServed = total;
+        }
+
+        /**
+         * Gets the number of rides that were run.
+         *
+         * @return the number of rides
+         */
+        public int getNumberOfRides() {
+            return ridersServed.length;
+        }
+
+        /**
+         * Gets the number of riders a ride served in this cycle.
+         *
+         * @param rideIndex the position of the ride in the list that was run
+         * @return the number of riders served
+         */
+        public int getRidersServed(int rideIndex) {
+            return ridersServed[rideIndex];
+        }
+
+        /**
+         * Gets the number of cycles a ride has completed, including this one.
+         *
+         * @param rideIndex the position of the ride in the list that was run
+         * @return the number of cycles completed
+         */
+        public int getNumOfCycles(int rideIndex) {
+            return numOfCycles[rideIndex];
+        }
+
+        /**
+         * Gets the number of riders served by all rides in this cycle.
+         *
+         * @return the total number of riders served
+         */
+        public long getTotalRidersServed() {
+            return totalRidersServed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Rides=%d, RidersServed=%d", ridersServed.length, totalRidersServed);
+        }
+    }
+}
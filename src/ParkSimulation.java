@@ -0,0 +1,367 @@
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ParkSimulation} class simulates a whole park of {@link Ride}s with a discrete-event
+ * scheduler. Guest arrivals, ride cycles and operator shifts are events ordered by their time in
+ * a priority queue; the simulation repeatedly takes the earliest event and applies it to its
+ * ride, which may schedule further events. Times are in milliseconds from the start of the
+ * simulation, and events with the same time are processed in the order they were scheduled.
+ *
+ * <p>A ride runs a cycle as soon as it has an operator and waiting visitors and its previous
+ * cycle has ended, and then every cycle time for as long as visitors are waiting, so visitors who
+ * arrive during a cycle board the next one together. Arrival streams generate their next arrival
+ * only when the previous one is processed, so a park-day with millions of guests never holds
+ * more than a few events per ride in the queue.
+ */
+public class ParkSimulation {
+    private final List<RideState> rides;
+    private final PriorityQueue<Event> events;
+    private long currentTime;
+    private long sequence;
+    private long processedEvents;
+
+    /**
+     * Default constructor that creates a simulation without rides.
+     */
+    public ParkSimulation() {
+        this.rides = new ArrayList<>();
+        this.events = new PriorityQueue<>();
+    }
+
+    /**
+     * Adds a ride to the park.
+     *
+     * @param ride the ride to be simulated
+     * @param cycleTime the time one cycle of the ride takes, in milliseconds
+     * @return the index of the ride, used to schedule events for it
+     * @throws IllegalArgumentException if the cycle time is not positive
+     */
+    public int addRide(Ride ride, long cycleTime) {
+        if (cycleTime <= 0) {
+            throw new IllegalArgumentException("Cycle time must be positive: " + cycleTime);
+        }
+
+        rides.add(new RideState(ride, cycleTime));
+        return rides.size() - 1;
+    }
+
+    /**
+     * Gets the ride with the given index.
+     *
+     * @param rideIndex the index returned by {@link #addRide(Ride, long)}
+     * @return the ride
+     */
+    public Ride getRide(int rideIndex) {
+        return rides.get(rideIndex).ride;
+    }
+
+    /**
+     * Gets the number of rides in the park.
+     *
+     * @return the number of rides
+     */
+    public int getNumberOfRides() {
+        return rides.size();
+    }
+
+    /**
+     * Gets the current simulation time.
+     *
+     * @return the time of the last processed event, in milliseconds
+     */
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of events processed so far.
+     *
+     * @return the number of processed events
+     */
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    /**
+     * Schedules the arrival of one visitor at the queue of a ride.
+     *
+     * @param time the arrival time, in milliseconds
+     * @param rideIndex the index of the ride
+     * @param visitor the arriving visitor
+     */
+    public void scheduleArrival(long time, int rideIndex, Visitor visitor) {
+        scheduleArrival(time, rideIndex, visitor, QueueLane.STANDARD);
+    }
+
+    /**
+     * Schedules the arrival of one visitor at a lane of the queue of a ride.
+     *
+     * @param time the arrival time, in milliseconds
+     * @param rideIndex the index of the ride
+     * @param visitor the arriving visitor
+     * @param lane the lane the visitor joins
+     */
+    public void scheduleArrival(long time, int rideIndex, Visitor visitor, QueueLane lane) {
+        checkRide(rideIndex);
+        schedule(new Event(EventType.ARRIVAL, time, rideIndex, visitor, null, lane, null, null));
+    }
+
+    /**
+     * Schedules the arrival of a party of visitors who ride together at a lane of the queue of a
+     * ride.
+     *
+     * @param time the arrival time, in milliseconds
+     * @param rideIndex the index of the ride
+     * @param party the visitors of the arriving party
+     * @param lane the lane the party joins
+     * @see Ride#offerParty(Collection, QueueLane)
+     */
+    public void scheduleParty(long time, int rideIndex, List<Visitor> party, QueueLane lane) {
+        checkRide(rideIndex);
+        schedule(new Event(EventType.ARRIVAL, time, rideIndex, null, party, lane, null, null));
+    }
+
+    /**
+     * Schedules a stream of visitors arriving at a ride with exponentially distributed gaps
+     * between them, which makes the arrivals a Poisson process.
+     *
+     * @param rideIndex the index of the ride
+     * @param start the time of the first possible arrival, in milliseconds
+     * @param end the time after which no more visitors arrive, in milliseconds
+     * @param meanInterarrival the average time between two arrivals, in milliseconds
+     * @param visitors supplies the arriving visitors
+     * @param random the source of randomness for the gaps
+     * @throws IllegalArgumentException if the mean time between arrivals is not positive and finite
+     */
+    public void scheduleArrivals(int rideIndex, long start, long end, double meanInterarrival,
+                                 Supplier<Visitor> visitors, Random random) {
+        scheduleArrivals(rideIndex, start, end, meanInterarrival, visitors, random, QueueLane.STANDARD);
+    }
+
+    /**
+     * Schedules a Poisson stream of visitors arriving at a lane of the queue of a ride.
+     *
+     * @param rideIndex the index of the ride
+     * @param start the time of the first possible arrival, in milliseconds
+     * @param end the time after which no more visitors arrive, in milliseconds
+     * @param meanInterarrival the average time between two arrivals, in milliseconds
+     * @param visitors supplies the arriving visitors
+     * @param random the source of randomness for the gaps
+     * @param lane the lane the visitors join
+     * @throws IllegalArgumentException if the mean time between arrivals is not positive and finite
+     */
+    public void scheduleArrivals(int rideIndex, long start, long end, double meanInterarrival,
+                                 Supplier<Visitor> visitors, Random random, QueueLane lane) {
+        checkRide(rideIndex);
+        if (!(meanInterarrival > 0) || Double.isInfinite(meanInterarrival)) {
+            throw new IllegalArgumentException("Mean interarrival time must be positive and finite: "
+                    + meanInterarrival);
+        }
+        ArrivalStream stream = new ArrivalStream(end, meanInterarrival, visitors, random);
+        long first = start + stream.nextGap();
+        if (first <= end) {
+            schedule(new Event(EventType.ARRIVAL, first, rideIndex, null, null, lane, null, stream));
+        }
+    }
+
+    /**
+     * Schedules an operator shift on a ride. The employee is assigned to the ride at the start
+     * of the shift and unassigned at its end, unless another employee has taken over meanwhile.
+     *
+     * @param rideIndex the index of the ride
+     * @param start the start time of the shift, in milliseconds
+     * @param end the end time of the shift, in milliseconds
+     * @param employee the employee operating the ride during the shift
+     */
+    public void scheduleShift(int rideIndex, long start, long end, Employee employee) {
+        checkRide(rideIndex);
+        schedule(new Event(EventType.SHIFT_START, start, rideIndex, null, null, null, employee, null));
+        schedule(new Event(EventType.SHIFT_END, end, rideIndex, null, null, null, employee, null));
+    }
+
+    /**
+     * Processes events in time order until no event is left or the next event is later than
+     * the given time.
+     *
+     * @param endTime the time to simulate up to, in milliseconds
+     * @return the number of events processed by this call
+     */
+    public long run(long endTime) {
+        long processedBefore = processedEvents;
+        while (!events.isEmpty() && events.peek().time <= endTime) {
+            Event event = events.poll();
+            currentTime = event.time;
+            processedEvents++;
+            switch (event.type) {
+                case ARRIVAL:
+                    arrive(event);
+                    break;
+                case CYCLE:
+                    runCycle(event.rideIndex);
+                    break;
+                case SHIFT_START:
+                    rides.get(event.rideIndex).ride.setEmployee(event.employee);
+                    scheduleCycleIfIdle(event.rideIndex, currentTime);
+                    break;
+                case SHIFT_END:
+                    Ride ride = rides.get(event.rideIndex).ride;
+                    if (ride.getEmployee() == event.employee) {
+                        ride.setEmployee(null);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return processedEvents - processedBefore;
+    }
+
+    /**
+     * Adds an arriving visitor or party to the ride's queue, starts the ride if it is idle, and
+     * schedules the next arrival of the stream the visitor belongs to.
+     */
+    private void arrive(Event event) {
+        ArrivalStream stream = event.stream;
+        Ride ride = rides.get(event.rideIndex).ride;
+        if (event.party != null) {
+            ride.offerParty(event.party, event.lane);
+        } else {
+            ride.addVisitorToQueue(stream == null ? event.visitor : stream.visitors.get(), event.lane);
+        }
+        scheduleCycleIfIdle(event.rideIndex, currentTime);
+
+        if (stream != null) {
+            long next = currentTime + stream.nextGap();
+            if (next <= stream.end) {
+                event.time = next;
+                schedule(event);
+            }
+        }
+    }
+
+    /**
+     * Runs one cycle of a ride and schedules the next one while visitors are still waiting.
+     */
+    private void runCycle(int rideIndex) {
+        RideState state = rides.get(rideIndex);
+        state.cycleScheduled = false;
+        if (state.ride.getEmployee() == null) {
+            return;
+        }
+
+        state.ride.runOneCycle();
+        state.availableAt = currentTime + state.cycleTime;
+        if (!state.ride.getWaitingQueue().isEmpty()) {
+            scheduleCycle(rideIndex, currentTime + state.cycleTime);
+        }
+    }
+
+    /**
+     * Schedules a cycle of a ride if it has an operator, has waiting visitors and no cycle is
+     * scheduled yet. The cycle starts when the previous cycle has ended.
+     */
+    private void scheduleCycleIfIdle(int rideIndex, long time) {
+        RideState state = rides.get(rideIndex);
+        if (!state.cycleScheduled && state.ride.getEmployee() != null
+                && !state.ride.getWaitingQueue().isEmpty()) {
+            scheduleCycle(rideIndex, Math.max(time, state.availableAt));
+        }
+    }
+
+    private void scheduleCycle(int rideIndex, long time) {
+        rides.get(rideIndex).cycleScheduled = true;
+        schedule(new Event(EventType.CYCLE, time, rideIndex, null, null, null, null, null));
+    }
+
+    private void schedule(Event event) {
+        event.sequence = sequence++;
+        events.add(event);
+    }
+
+    private void checkRide(int rideIndex) {
+        Objects.checkIndex(rideIndex, rides.size());
+    }
+
+    /**
+     * A ride of the park together with its cycle time, the time its last cycle ends, and whether
+     * its next cycle is scheduled.
+     */
+    private static final class RideState {
+        private final Ride ride;
+        private final long cycleTime;
+        private long availableAt;
+        private boolean cycleScheduled;
+
+        private RideState(Ride ride, long cycleTime) {
+            this.ride = ride;
+            this.cycleTime = cycleTime;
+        }
+    }
+
+    /**
+     * The kinds of events the simulation processes.
+     */
+    private enum EventType {
+        ARRIVAL, CYCLE, SHIFT_START, SHIFT_END
+    }
+
+    /**
+     * A scheduled event. Events are ordered by time and then by the order they were scheduled.
+     */
+    private static final class Event implements Comparable<Event> {
+        private final EventType type;
+        private final int rideIndex;
+        private final Visitor visitor;
+        private final List<Visitor> party;
+        private final QueueLane lane;
+        private final Employee employee;
+        private final ArrivalStream stream;
+        private long time;
+        private long sequence;
+
+        private Event(EventType type, long time, int rideIndex, Visitor visitor, List<Visitor> party,
+                      QueueLane lane, Employee employee, ArrivalStream stream) {
+            this.type = type;
+            this.time = time;
+            this.rideIndex = rideIndex;
+            this.visitor = visitor;
+            this.party = party;
+            this.lane = lane;
+            this.employee = employee;
+            this.stream = stream;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * A Poisson stream of arriving visitors.
+     */
+    private static final class ArrivalStream {
+        private final long end;
+        private final double meanInterarrival;
+        private final Supplier<Visitor> visitors;
+        private final Random random;
+
+        private ArrivalStream(long end, double meanInterarrival, Supplier<Visitor> visitors, Random random) {
+            this.end = end;
+            this.meanInterarrival = meanInterarrival;
+            this.visitors = visitors;
+            this.random = random;
+        }
+
+        /**
+         * Draws the time until the next arrival from an exponential distribution.
+         */
+        private long nextGap() {
+            return Math.round(-meanInterarrival * Math.log(1.0 - random.nextDouble()));
+        }
+    }
+}
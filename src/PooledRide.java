@@ -0,0 +1,532 @@
+import java.util.*;
+
+/**
+ * The {@code PooledRide} class is a low-garbage implementation of the {@code RideInterface} for
+ * rides that take a surge of guests. The waiting queue is a ring buffer of {@link Visitor} records
+ * that are all created with the ride: a visitor joining the queue is copied into the next free
+ * record, and the record is cleared and reused once its visitor has ridden. The history is a
+ * {@link ColumnarVisitorHistory} with room for the expected number of riders, so a cycle copies
+ * the riders into its columns instead of adding a list node for each of them.
+ *
+ * <p>Once the attractions of the visitors have been seen, adding visitors and running cycles
+ * allocate nothing until the history outgrows its capacity. The records are reused, so listeners
+ * receive the record of a visitor, which is only valid during the call; a listener that keeps a
+ * visitor must copy it, as {@link AsyncRideLogger} does. Visitors taken off the queue by
+ * {@link #removeVisitorFromQueue()} or {@link #drainQueue(Collection, int)} are copies.
+ */
+public class PooledRide implements RideInterface {
+    private static final RideListener[] NO_LISTENERS = new RideListener[0];
+
+    private String rideName;
+    private final int maxCapacity;
+    private Employee employee;
+    private final Visitor[] slots;
+    private final long[] queuedAt;
+    private final int mask;
+    private int head;
+    private int queueSize;
+    private final ColumnarVisitorHistory visitors;
+    private int maxRider;
+    private int numOfCycles;
+    private long rejectedVisitors;
+    private RideListener[] listeners;
+    private RideMetrics metrics;
+    private long clock;
+
+    /**
+     * Constructor that initializes the ride with a name, the size of its queue and history, and
+     * assigned employee. The queue records and the history columns are allocated here.
+     *
+     * @param rideName the name of the ride
+     * @param maxCapacity the largest number of visitors the waiting queue holds
+     * @param historyCapacity the number of riders the history holds before it grows
+     * @param employee the employee assigned to operate the ride
+     * @throws IllegalArgumentException if the capacity is less than 1 or more than 2^30
+     */
+    public PooledRide(String rideName, int maxCapacity, int historyCapacity, Employee employee) {
+        if (maxCapacity < 1 || maxCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid queue capacity " + maxCapacity);
+        }
+
+        this.rideName = rideName;
+        this.maxCapacity = maxCapacity;
+        this.employee = employee;
+        this.slots = new Visitor[maxCapacity == 1 ? 1 : Integer.highestOneBit(maxCapacity - 1) << 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Visitor();
+        }
+        this.queuedAt = new long[slots.length];
+        this.mask = slots.length - 1;
+        this.visitors = new ColumnarVisitorHistory(historyCapacity);
+        this.listeners = NO_LISTENERS;
+    }
+
+    /**
+     * Gets the name of the ride.
+     *
+     * @return the name of the ride
+     */
+    @Override
+    public String getRideName() {
+        return rideName;
+    }
+
+    /**
+     * Sets the name of the ride.
+     *
+     * @param rideName the name of the ride
+     */
+    public void setRideName(String rideName) {
+        this.rideName = rideName;
+    }
+
+    /**
+     * Gets the maximum capacity of the ride, which is the largest number of visitors the waiting
+     * queue holds. It is fixed when the ride is created.
+     *
+     * @return the maximum capacity of the ride
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Gets the employee assigned to the ride.
+     *
+     * @return the employee assigned to operate the ride
+     */
+    public Employee getEmployee() {
+        return employee;
+    }
+
+    /**
+     * Sets the employee assigned to the ride.
+     *
+     * @param employee the employee assigned to operate the ride
+     */
+    public void setEmployee(Employee employee) {
+        this.employee = employee;
+    }
+
+    /**
+     * Gets the number of visitors in the waiting queue.
+     *
+     * @return the length of the waiting queue
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Gets the ride history.
+     *
+     * @return the history of visitors who have taken the ride
+     */
+    public ColumnarVisitorHistory getVisitors() {
+        return visitors;
+    }
+
+    /**
+     * Gets the maximum number of riders that can be processed in one cycle.
+     *
+     * @return the maximum number of riders per cycle
+     */
+    public int getMaxRider() {
+        return maxRider;
+    }
+
+    /**
+     * Sets the maximum number of riders that can be processed in one cycle.
+     *
+     * @param maxRider the maximum number of riders per cycle
+     */
+    public void setMaxRider(int maxRider) {
+        this.maxRider = maxRider;
+    }
+
+    /**
+     * Gets the number of ride cycles completed.
+     *
+     * @return the number of cycles completed
+     */
+    public int getNumOfCycles() {
+        return numOfCycles;
+    }
+
+    /**
+     * Registers a listener that is notified of the queue, history and cycle events of this ride.
+     *
+     * @param listener the listener to be added
+     */
+    public void addRideListener(RideListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        RideListener[] updated = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        updated[updated.length - 1] = listener;
+        this.listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener previously added with {@link #addRideListener(RideListener)}.
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeRideListener(RideListener listener) {
+        List<RideListener> remaining = new ArrayList<>(Arrays.asList(this.listeners));
+        if (remaining.remove(listener)) {
+            this.listeners = remaining.isEmpty() ? NO_LISTENERS : remaining.toArray(NO_LISTENERS);
+        }
+    }
+
+    /**
+     * Gets the metrics collected by the ride.
+     *
+     * @return the metrics of the ride, or {@code null} if none are collected
+     */
+    public RideMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the ride records its wait times, cycle durations and queue depth into.
+     * The clock is read once per cycle or batch, and a visitor who joins on their own is given
+     * the time of the last one, so wait times are measured to the resolution of a cycle.
+     *
+     * @param metrics the metrics to be recorded, or {@code null} to stop collecting metrics
+     */
+    public void setMetrics(RideMetrics metrics) {
+        this.metrics = metrics;
+        tick();
+    }
+
+    /**
+     * Adds a copy of a visitor to the ride's waiting queue. The visitor is turned away if the
+     * queue is full.
+     *
+     * @param visitor the visitor to be added to the queue
+     */
+    @Override
+    public void addVisitorToQueue(Visitor visitor) {
+        offerVisitor(visitor);
+    }
+
+    /**
+     * Adds a copy of a visitor to the ride's waiting queue unless the queue is full. A visitor who
+     * is turned away is counted and reported to the listeners.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @return {@code true} if the visitor was added, {@code false} if the queue is full or the
+     *         visitor is {@code null}
+     */
+    @Override
+    public boolean offerVisitor(Visitor visitor) {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return false;
+        }
+
+        if (queueSize >= maxCapacity) {
+            rejectVisitor(visitor, this.listeners);
+            return false;
+        }
+
+        Visitor slot = enqueue(visitor, this.metrics != null ? this.clock : 0);
+        if (this.metrics != null) {
+            this.metrics.recordQueueDepth(queueSize);
+        }
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorAddedToQueue(this, slot);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of visitors turned away because the waiting queue was full.
+     *
+     * @return the number of rejected visitors
+     */
+    @Override
+    public long getRejectedVisitors() {
+        return rejectedVisitors;
+    }
+
+    /**
+     * Adds copies of a group of visitors to the ride's waiting queue in a single pass. Visitors
+     * who do not fit in the queue are turned away.
+     *
+     * @param visitors the visitors to be added to the queue
+     */
+    @Override
+    public void addVisitorsToQueue(Collection<? extends Visitor> visitors) {
+        RideListener[] current = this.listeners;
+        RideMetrics currentMetrics = this.metrics;
+        long now = currentMetrics != null ? tick() : 0;
+        for (Visitor visitor : visitors) {
+            if (visitor == null) {
+                for (RideListener listener : current) {
+                    listener.onNullVisitor(this);
+                }
+                continue;
+            }
+            if (queueSize >= maxCapacity) {
+                rejectVisitor(visitor, current);
+                continue;
+            }
+
+            Visitor slot = enqueue(visitor, now);
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToQueue(this, slot);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.recordQueueDepth(queueSize);
+        }
+    }
+
+    /**
+     * Removes up to the given number of visitors from the front of the queue and adds copies of
+     * them to the buffer.
+     *
+     * @param buffer the collection that receives the removed visitors
+     * @param maxVisitors the maximum number of visitors to be removed
+     * @return the number of visitors removed from the queue
+     */
+    @Override
+    public int drainQueue(Collection<? super Visitor> buffer, int maxVisitors) {
+        int removed = Math.max(0, Math.min(maxVisitors, queueSize));
+        for (int i = 0; i < removed; i++) {
+            buffer.add(copy(slots[(head + i) & mask], new Visitor()));
+        }
+        reportRemoved(removed, this.metrics != null ? tick() : 0);
+        release(removed);
+        return removed;
+    }
+
+    /**
+     * Removes the visitor at the front of the queue and returns a copy of them.
+     *
+     * @return a copy of the visitor removed from the queue, or {@code null} if the queue is empty
+     */
+    @Override
+    public Visitor removeVisitorFromQueue() {
+        if (queueSize == 0) {
+            for (RideListener listener : this.listeners) {
+                listener.onQueueEmpty(this);
+            }
+            return null;
+        }
+
+        Visitor visitor = copy(slots[head], new Visitor());
+        reportRemoved(1, this.metrics != null ? tick() : 0);
+        release(1);
+        return visitor;
+    }
+
+    /**
+     * Prints the details of all visitors currently in the waiting queue.
+     */
+    @Override
+    public void printQueue() {
+        if (queueSize == 0) {
+            System.out.println("Waiting queue is empty.");
+            return;
+        }
+
+        System.out.println("Waiting queue:");
+        for (int i = 0; i < queueSize; i++) {
+            System.out.println(slots[(head + i) & mask]);
+        }
+    }
+
+    /**
+     * Runs one cycle of the ride, copying up to the maximum number of riders from the front of
+     * the queue into the history and recycling their queue records.
+     */
+    @Override
+    public void runOneCycle() {
+        if (this.employee == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNoOperator(this);
+            }
+            return;
+        }
+
+        if (queueSize == 0) {
+            for (RideListener listener : this.listeners) {
+                listener.onNoWaitingVisitors(this);
+            }
+            return;
+        }
+
+        long start = this.metrics != null ? tick() : 0;
+        int riders = Math.max(0, Math.min(this.maxRider, queueSize));
+        RideListener[] current = this.listeners;
+        reportRemoved(riders, start);
+        for (int i = 0; i < riders; i++) {
+            Visitor rider = slots[(head + i) & mask];
+            this.visitors.addVisitorToHistory(rider);
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToHistory(this, rider);
+            }
+        }
+        release(riders);
+
+        this.numOfCycles++;
+        if (this.metrics != null) {
+            this.metrics.recordCycleDuration(tick() - start);
+        }
+        for (RideListener listener : current) {
+            listener.onCycleCompleted(this, riders);
+        }
+    }
+
+    /**
+     * Adds a visitor to the ride history after they have ridden the attraction. The fields of the
+     * visitor are copied into the history.
+     *
+     * @param visitor the visitor to be added to the ride history
+     */
+    @Override
+    public void addVisitorToHistory(Visitor visitor) {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return;
+        }
+
+        this.visitors.addVisitorToHistory(visitor);
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorAddedToHistory(this, visitor);
+        }
+    }
+
+    /**
+     * Adds a group of visitors to the ride history in a single pass.
+     *
+     * @param visitors the visitors to be added to the ride history
+     */
+    @Override
+    public void addVisitorsToHistory(Collection<? extends Visitor> visitors) {
+        for (Visitor visitor : visitors) {
+            addVisitorToHistory(visitor);
+        }
+    }
+
+    /**
+     * Checks if a visitor has already taken the ride.
+     *
+     * @param visitor the visitor to be checked
+     * @return {@code true} if the visitor has taken the ride, otherwise {@code false}
+     */
+    @Override
+    public boolean checkVisitorFromHistory(Visitor visitor) {
+        return this.visitors.checkVisitorFromHistory(visitor);
+    }
+
+    /**
+     * Returns the number of visitors who have taken the ride.
+     *
+     * @return the number of visitors who have ridden the attraction
+     */
+    @Override
+    public int numberOfVisitors() {
+        return this.visitors.numberOfVisitors();
+    }
+
+    /**
+     * Prints the ride history by displaying the list of visitors who have taken the ride.
+     */
+    @Override
+    public void printRideHistory() {
+        this.visitors.printRideHistory();
+    }
+
+    /**
+     * Reads the clock that join and wait times are measured with, and keeps the reading as the
+     * time given to visitors who join on their own until the next cycle or batch.
+     *
+     * @return the current value of {@link System#nanoTime()}
+     */
+    private long tick() {
+        this.clock = System.nanoTime();
+        return this.clock;
+    }
+
+    /**
+     * Copies a visitor into the next free record of the ring buffer and records the time they
+     * joined next to it.
+     */
+    private Visitor enqueue(Visitor visitor, long time) {
+        int index = (head + queueSize) & mask;
+        Visitor slot = copy(visitor, slots[index]);
+        queuedAt[index] = time;
+        queueSize++;
+        return slot;
+    }
+
+    /**
+     * Records the wait times of the visitors at the front of the ring buffer and reports them to
+     * the listeners as removed from the queue, measuring the waits up to the given time.
+     */
+    private void reportRemoved(int count, long now) {
+        RideListener[] current = this.listeners;
+        RideMetrics currentMetrics = this.metrics;
+        for (int i = 0; i < count; i++) {
+            int index = (head + i) & mask;
+            Visitor slot = slots[index];
+            if (currentMetrics != null && queuedAt[index] != 0) {
+                currentMetrics.recordWaitTime(now - queuedAt[index]);
+            }
+            for (RideListener listener : current) {
+                listener.onVisitorRemovedFromQueue(this, slot);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.recordQueueDepth(queueSize - count);
+        }
+    }
+
+    /**
+     * Removes visitors from the front of the ring buffer and clears their records, so that they
+     * do not keep the strings of visitors who have left.
+     */
+    private void release(int count) {
+        for (int i = 0; i < count; i++) {
+            Visitor slot = slots[head];
+            slot.setName(null);
+            slot.setPhoneNumber(null);
+            slot.setTicketId(null);
+            slot.setFavoriteAttraction(null);
+            queuedAt[head] = 0;
+            head = (head + 1) & mask;
+        }
+        queueSize -= count;
+    }
+
+    /**
+     * Copies the fields of one visitor into another.
+     */
+    private static Visitor copy(Visitor from, Visitor to) {
+        to.setName(from.getName());
+        to.setAge(from.getAge());
+        to.setPhoneNumber(from.getPhoneNumber());
+        to.setTicketId(from.getTicketId());
+        to.setFavoriteAttraction(from.getFavoriteAttraction());
+        return to;
+    }
+
+    /**
+     * Counts a visitor turned away because the queue is full and reports them to the listeners.
+     */
+    private void rejectVisitor(Visitor visitor, RideListener[] current) {
+        this.rejectedVisitors++;
+        for (RideListener listener : current) {
+            listener.onQueueFull(this, visitor);
+        }
+    }
+}
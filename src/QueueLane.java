@@ -0,0 +1,39 @@
+/**
+ * The {@code QueueLane} enum lists the lanes of a ride's waiting queue. Each lane is served in
+ * arrival order, and a {@link MultiLaneQueue} shares the seats of a cycle between the fast-pass
+ * and standard lanes in proportion to their weights.
+ */
+public enum QueueLane {
+    /**
+     * Visitors holding a fast-pass, who are served more often than the other lanes by default.
+     */
+    FAST_PASS(3),
+
+    /**
+     * Visitors queueing normally. This is the lane used when no lane is given.
+     */
+    STANDARD(1),
+
+    /**
+     * Visitors riding alone, who accept any free seat. They are seated when the next party of
+     * every other lane is too large for the seats left in a cycle, or when the other lanes are
+     * empty, so they fill seats that would otherwise stay empty. The weight of this lane is not
+     * used.
+     */
+    SINGLE_RIDER(1);
+
+    private final int defaultWeight;
+
+    QueueLane(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Gets the weight the lane has unless it is changed.
+     *
+     * @return the default weight of the lane
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+}
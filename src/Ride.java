@@ -1,17 +1,46 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * The {@code Ride} class implements the {@code RideInterface} and represents a ride at a theme park.
  */
 public class Ride implements RideInterface {
+    private static final RideListener[] NO_LISTENERS = new RideListener[0];
+    private static final int MIN_TICKET_FILTER_SIZE = 1024;
+    private static final double DEFAULT_TICKET_FILTER_RATE = 0.01;
+    private static final int PARALLEL_QUERY_THRESHOLD = 1 << 13;
+
     private String rideName;
     private int maxCapacity;
     private Employee employee;
-    private Queue<Visitor> waitingQueue;
+    private MultiLaneQueue waitingQueue;
     private LinkedList<Visitor> visitors;
     private int maxRider;
     private int numOfCycles;
+    private int lastCycleRiders;
+    private Map<String, Integer> nameIndex;
+    private Map<String, Integer> ticketIndex;
+    private BloomFilter ticketFilter;
+    private RideListener[] listeners;
+    private RideMetrics metrics;
+    private long clock;
+    private int historyOrder;
+    private String exportPath;
+    private int exportedOrder;
+    private long exportedRows;
+    private long exportedBytes;
+    private long spilledRows;
+    private VisitorInterner interner;
+    private long rejectedVisitors;
+    private int historyRetention;
+    private SpilledRideHistory spilledHistory;
 
     /**
      * Default constructor for the {@code Ride} class. Initializes fields to default values.
@@ -20,8 +49,12 @@ public class Ride implements RideInterface {
         this.rideName = "";
         this.maxCapacity = 0;
         this.employee = null;
-        this.waitingQueue = new LinkedList<>();
+        this.waitingQueue = new MultiLaneQueue();
         this.visitors = new LinkedList<>();
+        this.nameIndex = new HashMap<>();
+        this.ticketIndex = new HashMap<>();
+        this.ticketFilter = new BloomFilter(MIN_TICKET_FILTER_SIZE, DEFAULT_TICKET_FILTER_RATE);
+        this.listeners = NO_LISTENERS;
     }
 
     /**
@@ -35,8 +68,12 @@ public class Ride implements RideInterface {
         this.rideName = rideName;
         this.maxCapacity = maxCapacity;
         this.employee = employee;
-        this.waitingQueue = new LinkedList<>();
+        this.waitingQueue = new MultiLaneQueue();
         this.visitors = new LinkedList<>();
+        this.nameIndex = new HashMap<>();
+        this.ticketIndex = new HashMap<>();
+        this.ticketFilter = new BloomFilter(MIN_TICKET_FILTER_SIZE, DEFAULT_TICKET_FILTER_RATE);
+        this.listeners = NO_LISTENERS;
     }
 
     /**
@@ -44,6 +81,7 @@ public class Ride implements RideInterface {
      *
      * @return the name of the ride
      */
+    @Override
     public String getRideName() {
         return rideName;
     }
@@ -58,7 +96,8 @@ public class Ride implements RideInterface {
     }
 
     /**
-     * Gets the maximum capacity of the ride.
+     * Gets the maximum capacity of the ride, which is the largest number of visitors the waiting
+     * queue holds. A capacity of zero or less means the queue is not bounded.
      *
      * @return the maximum capacity of the ride
      */
@@ -67,9 +106,10 @@ public class Ride implements RideInterface {
     }
 
     /**
-     * Sets the maximum capacity of the ride.
+     * Sets the maximum capacity of the ride. Visitors already waiting stay in the queue when the
+     * capacity is lowered below their number; new visitors are turned away until it has room.
      *
-     * @param maxCapacity the maximum capacity of the ride
+     * @param maxCapacity the maximum capacity of the ride, or zero for an unbounded queue
      */
     public void setMaxCapacity(int maxCapacity) {
         this.maxCapacity = maxCapacity;
@@ -139,13 +179,256 @@ public class Ride implements RideInterface {
     }
 
     /**
-     * Sorts the list of visitors based on a given comparator.
+     * Gets the number of visitors taken off the queue by the last call to {@link #runOneCycle()}.
+     * Unlike a change in the size of the history, it stays correct when the cycle spills part of
+     * the history to disk.
+     *
+     * @return the number of riders of the last cycle, or 0 if it did not run
+     */
+    public int getLastCycleRiders() {
+        return lastCycleRiders;
+    }
+
+    /**
+     * Registers a listener that is notified of the queue, history and cycle events of this ride.
+     * Without any listener these events are not reported at all.
+     *
+     * @param listener the listener to be added
+     */
+    public void addRideListener(RideListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        RideListener[] updated = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        updated[updated.length - 1] = listener;
+        this.listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener previously added with {@link #addRideListener(RideListener)}.
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeRideListener(RideListener listener) {
+        List<RideListener> remaining = new ArrayList<>(Arrays.asList(this.listeners));
+        if (remaining.remove(listener)) {
+            this.listeners = remaining.isEmpty() ? NO_LISTENERS : remaining.toArray(NO_LISTENERS);
+        }
+    }
+
+    /**
+     * Gets the metrics collected by the ride.
+     *
+     * @return the metrics of the ride, or {@code null} if none are collected
+     */
+    public RideMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the ride records its wait times, cycle durations and queue depth into.
+     * The time each visitor joins the queue is recorded with their place in the queue while
+     * metrics are set, so a visitor who is queued twice or on several rides keeps separate times.
+     *
+     * <p>The clock is read once per cycle or batch rather than once per visitor. A visitor who
+     * joins on their own is given the time of the ride's last cycle or batch, so wait times are
+     * measured to the resolution of a cycle.
+     *
+     * @param metrics the metrics to be recorded, or {@code null} to stop collecting metrics
+     */
+    public void setMetrics(RideMetrics metrics) {
+        this.metrics = metrics;
+        tick();
+    }
+
+    /**
+     * Sets the weight of a lane of the waiting queue. A lane with weight 3 gets three times as
+     * many turns to seat a party as a lane with weight 1 while both have parties waiting that fit
+     * in the seats left.
+     *
+     * @param lane the lane
+     * @param weight the new weight of the lane, at least 1
+     * @throws IllegalArgumentException if the weight is less than 1
+     */
+    public void setLaneWeight(QueueLane lane, int weight) {
+        this.waitingQueue.setWeight(lane, weight);
+    }
+
+    /**
+     * Gets the Bloom filter over the ticket IDs of the ride history, which lets
+     * {@link #checkTicketFromHistory(String)} answer most negative checks without a lookup.
+     *
+     * @return the ticket ID filter of the ride
+     */
+    public BloomFilter getTicketFilter() {
+        return ticketFilter;
+    }
+
+    /**
+     * Sets the false-positive rate of the ticket ID filter and rebuilds the filter. A lower rate
+     * skips more lookups for visitors who have not taken the ride, but uses more memory.
+     *
+     * @param falsePositiveRate the false-positive rate, between 0 and 1
+     * @throws IllegalArgumentException if the rate is not between 0 and 1
+     */
+    public void setTicketFilterFalsePositiveRate(double falsePositiveRate) {
+        rebuildTicketFilter(this.ticketIndex.size(), falsePositiveRate);
+    }
+
+    /**
+     * Gets the interner that shares visitors and attraction names between rows.
+     *
+     * @return the interner of the ride, or {@code null} if visitors are not shared
+     */
+    public VisitorInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Sets the interner through which imported and queued visitors are passed, so that repeat
+     * visitors and attraction names are stored once. Rides of the same park can share one interner.
+     *
+     * @param interner the interner to be used, or {@code null} to keep every visitor as given
+     */
+    public void setInterner(VisitorInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Gets the number of recent visitors of the ride history kept in memory.
+     *
+     * @return the number of visitors kept in memory, or 0 if the whole history is kept
+     */
+    public int getHistoryRetention() {
+        return historyRetention;
+    }
+
+    /**
+     * Keeps only the most recent visitors of the ride history in memory. Whenever the history
+     * grows a quarter over the limit, its oldest visitors are appended to a spill file in the CSV
+     * format and removed from memory. Spilled visitors are still counted by
+     * {@link #numberOfVisitors()} and found by {@link #checkVisitorFromHistory(Visitor)} and
+     * {@link #checkTicketFromHistory(String)}, while sorting, querying, printing and exporting the
+     * history only cover the visitors in memory. Visitors already spilled to an existing spill
+     * file are kept and belong to the ride history.
+     *
+     * @param maxVisitorsInMemory the number of recent visitors kept in memory, or 0 to stop spilling
+     * @param spillFilePath the path to the spill file, which is reopened when it exists
+     */
+    public void setHistoryRetention(int maxVisitorsInMemory, String spillFilePath) {
+        setHistoryRetention(maxVisitorsInMemory, spillFilePath, false);
+    }
+
+    /**
+     * Keeps only the most recent visitors of the ride history in memory, as
+     * {@link #setHistoryRetention(int, String)} does, and optionally empties the spill file when
+     * it is first set.
+     *
+     * @param maxVisitorsInMemory the number of recent visitors kept in memory, or 0 to stop spilling
+     * @param spillFilePath the path to the spill file
+     * @param truncate {@code true} to discard the visitors already spilled to an existing file
+     */
+    public void setHistoryRetention(int maxVisitorsInMemory, String spillFilePath, boolean truncate) {
+        try {
+            if (this.spilledHistory == null) {
+                this.spilledHistory = new SpilledRideHistory(spillFilePath, truncate);
+            } else if (!this.spilledHistory.getFilePath().equals(spillFilePath)) {
+                throw new IllegalArgumentException("Ride history is already spilled to "
+                        + this.spilledHistory.getFilePath());
+            }
+            this.historyRetention = Math.max(0, maxVisitorsInMemory);
+            retainHistory();
+        } catch (Exception e) {
+            System.out.println("History retention failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the disk tier of the ride history.
+     *
+     * @return the spilled history, or {@code null} if no history retention has been set
+     */
+    public SpilledRideHistory getSpilledHistory() {
+        return spilledHistory;
+    }
+
+    /**
+     * Sorts the list of visitors based on a given comparator. A {@link VisitorComparator} is
+     * applied through {@link VisitorComparator#sort(List)}, which gives the same order faster.
      *
      * @param visitors the list of visitors to be sorted
      * @param comparator the comparator to determine the sorting order
      */
     public void sortVisitors(List<Visitor> visitors, Comparator<Visitor> comparator) {
-        Collections.sort(visitors, comparator);
+        if (comparator != null && comparator.getClass() == VisitorComparator.class) {
+            VisitorComparator.sort(visitors);
+        } else {
+            Collections.sort(visitors, comparator);
+        }
+        if (visitors == this.visitors) {
+            rebuildHistoryIndex();
+            this.historyOrder++;
+        }
+    }
+
+    /**
+     * Returns the first visitors of the ride history in the order of a comparator, without
+     * sorting or changing the history. Only the {@code k} first visitors are kept while the
+     * history is scanned, so this is much faster than sorting the whole history when {@code k}
+     * is small.
+     *
+     * @param comparator the comparator to determine the order
+     * @param k the number of visitors to return
+     * @return up to {@code k} visitors in the order of the comparator, with visitors that compare
+     *         equal in the order they were added to the history
+     */
+    public List<Visitor> topVisitors(Comparator<? super Visitor> comparator, int k) {
+        return findVisitors(null, comparator, k);
+    }
+
+    /**
+     * Returns the visitors of the ride history that match a filter, in the order of a comparator,
+     * without changing the history. Large histories are filtered on several threads. When a limit
+     * is given, only that many matching visitors are kept while the history is scanned instead of
+     * sorting all of them.
+     *
+     * @param filter the condition the visitors must match, or {@code null} to match all visitors
+     * @param comparator the comparator to determine the order, or {@code null} to keep the order
+     *                   of the history
+     * @param limit the largest number of visitors to return, or a negative number for no limit
+     * @return the matching visitors, with visitors that compare equal in the order they were added
+     *         to the history
+     */
+    public List<Visitor> findVisitors(Predicate<? super Visitor> filter, Comparator<? super Visitor> comparator,
+                                      int limit) {
+        Visitor[] history = this.visitors.toArray(new Visitor[0]);
+        IntStream positions = IntStream.range(0, history.length);
+        if (history.length >= PARALLEL_QUERY_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        if (filter != null) {
+            positions = positions.filter(i -> filter.test(history[i]));
+        }
+
+        if (comparator == null) {
+            if (limit >= 0) {
+                positions = positions.limit(limit);
+            }
+            return positions.mapToObj(i -> history[i]).collect(Collectors.toCollection(ArrayList::new));
+        }
+        if (limit >= 0 && limit < history.length) {
+            return positions.collect(() -> new TopVisitors(history, comparator, limit),
+                    TopVisitors::offer, TopVisitors::offerAll).toList();
+        }
+
+        List<Visitor> matches = positions.mapToObj(i -> history[i]).collect(Collectors.toCollection(ArrayList::new));
+        if (comparator.getClass() == VisitorComparator.class) {
+            VisitorComparator.sort(matches);
+        } else {
+            matches.sort(comparator);
+        }
+        return matches;
     }
 
     /**
@@ -155,19 +438,57 @@ public class Ride implements RideInterface {
      */
     public void exportRideHistory(String filePath) {
         try {
-            FileWriter writer = new FileWriter(filePath);
-            Iterator<Visitor> it = this.visitors.iterator();
-            while (it.hasNext()) {
-                Visitor visitor = it.next();
-                String msg = String.format("%s,%d,%s,%s,%s",
-                        visitor.getName(), visitor.getAge(), visitor.getPhoneNumber(),
-                        visitor.getTicketId(), visitor.getFavoriteAttraction()
-                );
-
-                writer.write(msg + System.lineSeparator());
-                writer.flush();
-            }
-            writer.close();
+            RideHistoryCsv.write(filePath, this.visitors);
+            System.out.println("Export ride history successfully.");
+        } catch (IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exports the ride history (visitors) to a CSV file, writing only the visitors added since
+     * the last incremental export to the same file. The whole history is written again instead
+     * when the file is a different one, the history has been sorted with
+     * {@link #sortVisitors(List, Comparator)} or has become shorter, or the file no longer has the
+     * size the last export left it with. Unlike {@link #exportRideHistory(String)}, the export
+     * covers the visitors moved to the spill file by the history retention: a rewrite copies the
+     * spill file first and then writes the visitors in memory. Spilled visitors only leave the
+     * front of the history, so they do not cause a rewrite; the ones that had not been exported
+     * yet are copied from the spill file. Other changes made to the list returned by
+     * {@link #getVisitors()} are not detected; use {@link #exportRideHistory(String)} after them.
+     *
+     * @param filePath the path to the file to export the data
+     */
+    public void exportRideHistoryIncremental(String filePath) {
+        try {
+            Path path = Paths.get(filePath);
+            long pending = this.exportedRows - this.spilledRows;
+            boolean append = filePath.equals(this.exportPath)
+                    && this.exportedOrder == this.historyOrder
+                    && pending <= this.visitors.size()
+                    && Files.exists(path) && Files.size(path) == this.exportedBytes;
+
+            this.exportPath = null;
+            long size;
+            if (append) {
+                if (pending < 0) {
+                    SpilledRideHistory spilled = this.spilledHistory;
+                    spilled.appendTo(spilled.getNumberOfVisitors() + pending, filePath);
+                }
+                size = RideHistoryCsv.append(filePath, this.visitors.listIterator((int) Math.max(0, pending)));
+            } else if (this.spilledHistory != null && this.spilledHistory.getNumberOfVisitors() > 0) {
+                Files.deleteIfExists(path);
+                this.spilledHistory.appendTo(0, filePath);
+                size = RideHistoryCsv.append(filePath, this.visitors.iterator());
+            } else {
+                RideHistoryCsv.write(filePath, this.visitors);
+                size = Files.size(path);
+            }
+
+            this.exportPath = filePath;
+            this.exportedOrder = this.historyOrder;
+            this.exportedRows = this.spilledRows + this.visitors.size();
+            this.exportedBytes = size;
             System.out.println("Export ride history successfully.");
         } catch (IOException e) {
             System.out.println("Export failed: " + e.getMessage());
@@ -181,25 +502,26 @@ public class Ride implements RideInterface {
      */
     public void importRideHistory(String filePath) {
         try {
-            Scanner sc = new Scanner(new File(filePath));
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                if (line.isBlank()) {
-                    continue;
-                }
-
-                String[] parts = line.trim().split(",");
-                if (parts.length == 5) {
-                    String name = parts[0];
-                    int age = Integer.parseInt(parts[1]);
-                    String phone = parts[2];
-                    String ticketId = parts[3];
-                    String favoriteAttraction = parts[4];
+            RideHistoryCsv.read(filePath, this::addImportedVisitor);
+            System.out.println("Import ride history successfully.");
+        } catch (Exception e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
 
-                    this.visitors.add(new Visitor(name, age, phone, ticketId, favoriteAttraction));
-                }
+    /**
+     * Imports the ride history (visitors) from a CSV file, parsing the file in parallel on the
+     * common fork-join pool. The visitors are added in file order. Unlike
+     * {@link #importRideHistory(String)}, no visitor is added if the file contains an invalid row.
+     *
+     * @param filePath the path to the file to import the data from
+     */
+    public void importRideHistoryParallel(String filePath) {
+        try {
+            List<Visitor> imported = RideHistoryCsv.readParallel(filePath, ForkJoinPool.commonPool());
+            for (Visitor visitor : imported) {
+                addImportedVisitor(visitor);
             }
-            sc.close();
             System.out.println("Import ride history successfully.");
         } catch (Exception e) {
             System.out.println("Import failed: " + e.getMessage());
@@ -207,19 +529,284 @@ public class Ride implements RideInterface {
     }
 
     /**
-     * Adds a visitor to the ride's waiting queue.
+     * Exports the ride history (visitors) to a file in the binary format of {@link RideHistoryBinary}.
+     *
+     * @param filePath the path to the file to export the data
+     */
+    public void exportRideHistoryBinary(String filePath) {
+        try {
+            RideHistoryBinary.write(filePath, this.visitors);
+            System.out.println("Export ride history successfully.");
+        } catch (IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imports the ride history (visitors) from a file in the binary format of {@link RideHistoryBinary}.
+     *
+     * @param filePath the path to the file to import the data from
+     */
+    public void importRideHistoryBinary(String filePath) {
+        try {
+            RideHistoryBinary.read(filePath, this::addImportedVisitor);
+            System.out.println("Import ride history successfully.");
+        } catch (Exception e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restores the ride history and the number of cycles from a {@link RideJournal}, then
+     * registers the journal as a listener so that every visitor added to the history and every
+     * completed cycle from now on is recorded in it. The restored visitors are added to the
+     * current history without raising events, so this is meant for a new ride after a restart.
+     *
+     * <p>A ride that keeps its history with {@link #setHistoryRetention(int, String)} must have
+     * the retention set, with the same spill file, before recovering. The spill file is then cut
+     * back to the size it had at the last compaction of the journal, or emptied if the journal has
+     * not been compacted yet, because the visitors spilled after it are replayed from the journal.
+     * The restored history is spilled again once it is complete.
+     *
+     * @param journal the journal to replay and to record into
+     */
+    public void recoverFromJournal(RideJournal journal) {
+        try {
+            int retention = this.historyRetention;
+            this.historyRetention = 0;
+            try {
+                this.numOfCycles += journal.replay(this::addImportedVisitor);
+            } finally {
+                this.historyRetention = retention;
+            }
+
+            long spillSize = journal.getSnapshotSpillSize();
+            if (this.spilledHistory != null) {
+                this.spilledHistory.truncate(spillSize);
+                if (this.spilledHistory.getFileSize() != spillSize) {
+                    throw new IllegalStateException("Spill file " + this.spilledHistory.getFilePath()
+                            + " is shorter than the snapshot expects: " + spillSize + " bytes");
+                }
+            } else if (spillSize > 0) {
+                throw new IllegalStateException("Snapshot refers to " + spillSize
+                        + " bytes of spilled history, but the ride has no spill file");
+            }
+            retainHistory();
+            addRideListener(journal);
+            System.out.println("Recover ride history successfully.");
+        } catch (Exception e) {
+            System.out.println("Recovery failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a visitor to the standard lane of the ride's waiting queue.
      *
      * @param visitor the visitor to be added to the queue
      */
     @Override
     public void addVisitorToQueue(Visitor visitor) {
-        if (visitor != null) {
-            this.waitingQueue.offer(visitor);
-            System.out.println("Add Visitor To Queue successfully. Visitor: " + visitor.getName());
-            return;
+        addVisitorToQueue(visitor, QueueLane.STANDARD);
+    }
+
+    /**
+     * Adds a visitor to a lane of the ride's waiting queue. Each cycle shares its seats between
+     * the fast-pass and standard lanes in proportion to the lane weights, and seats single riders
+     * where no other party fits. The visitor is turned away if the queue is at the ride's
+     * capacity.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @param lane the lane the visitor joins
+     */
+    public void addVisitorToQueue(Visitor visitor, QueueLane lane) {
+        offerVisitor(visitor, lane);
+    }
+
+    /**
+     * Adds a visitor to the standard lane of the ride's waiting queue unless the queue is at the
+     * ride's capacity.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @return {@code true} if the visitor was added, {@code false} if the queue is full or the
+     *         visitor is {@code null}
+     */
+    @Override
+    public boolean offerVisitor(Visitor visitor) {
+        return offerVisitor(visitor, QueueLane.STANDARD);
+    }
+
+    /**
+     * Adds a visitor to a lane of the ride's waiting queue unless the queue is at the ride's
+     * capacity. A visitor who is turned away is counted and reported to the listeners. The ride
+     * is used by one thread, so it never waits for room; {@link ConcurrentRide} can.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @param lane the lane the visitor joins
+     * @return {@code true} if the visitor was added, {@code false} if the queue is full or the
+     *         visitor is {@code null}
+     */
+    public boolean offerVisitor(Visitor visitor, QueueLane lane) {
+        if (visitor == null) {
+            for (RideListener listener : this.listeners) {
+                listener.onNullVisitor(this);
+            }
+            return false;
+        }
+
+        if (isQueueFull()) {
+            rejectVisitor(visitor, this.listeners);
+            return false;
+        }
+
+        if (this.interner != null) {
+            visitor = this.interner.intern(visitor);
+        }
+        if (this.metrics != null) {
+            this.waitingQueue.offer(visitor, lane, this.clock);
+            this.metrics.recordQueueDepth(this.waitingQueue.size());
+        } else {
+            this.waitingQueue.offer(visitor, lane);
         }
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorAddedToQueue(this, visitor);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a party of visitors who ride together to a lane of the ride's waiting queue. A cycle
+     * only seats a party whose members all fit in the seats it has left, and lets a party that
+     * fits take the turn of one that does not. Single riders are seated when no other party fits,
+     * so they fill the seats a larger party would leave empty. A party larger than the whole ride
+     * takes every seat of one cycle and boards the next cycle with the rest of its members. The
+     * whole party is turned away if it does not fit within the ride's capacity, and {@code null}
+     * members are reported and skipped.
+     *
+     * @param party the visitors of the party, in the order they board
+     * @param lane the lane the party joins
+     * @return {@code true} if the party was added, {@code false} if the queue has no room for it
+     *         or it has no visitors
+     * @throws IllegalArgumentException if a party of more than one visitor joins the single-rider
+     *                                  lane
+     */
+    public boolean offerParty(Collection<? extends Visitor> party, QueueLane lane) {
+        RideListener[] current = this.listeners;
+        int members = 0;
+        for (Visitor visitor : party) {
+            if (visitor != null) {
+                members++;
+            }
+        }
+        if (members > 1 && lane == QueueLane.SINGLE_RIDER) {
+            throw new IllegalArgumentException("Single riders ride alone: party of " + members);
+        }
+        boolean full = this.maxCapacity > 0 && this.waitingQueue.size() + members > this.maxCapacity;
+
+        long now = this.metrics != null ? tick() : 0;
+        boolean joinsParty = false;
+        for (Visitor visitor : party) {
+            if (visitor == null) {
+                for (RideListener listener : current) {
+                    listener.onNullVisitor(this);
+                }
+                continue;
+            }
+            if (full) {
+                rejectVisitor(visitor, current);
+                continue;
+            }
+
+            if (this.interner != null) {
+                visitor = this.interner.intern(visitor);
+            }
+            this.waitingQueue.offer(visitor, lane, now, joinsParty);
+            joinsParty = true;
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToQueue(this, visitor);
+            }
+        }
+        if (this.metrics != null) {
+            this.metrics.recordQueueDepth(this.waitingQueue.size());
+        }
+        return !full && members > 0;
+    }
+
+    /**
+     * Returns the number of visitors turned away because the waiting queue was at the ride's
+     * capacity.
+     *
+     * @return the number of rejected visitors
+     */
+    @Override
+    public long getRejectedVisitors() {
+        return rejectedVisitors;
+    }
 
-        System.out.println("Visitor is null.");
+    /**
+     * Adds a group of visitors to the ride's waiting queue in a single pass. Visitors who do not
+     * fit within the ride's capacity are turned away.
+     *
+     * @param visitors the visitors to be added to the queue
+     */
+    @Override
+    public void addVisitorsToQueue(Collection<? extends Visitor> visitors) {
+        RideListener[] current = this.listeners;
+        RideMetrics currentMetrics = this.metrics;
+        long now = currentMetrics != null ? tick() : 0;
+        for (Visitor visitor : visitors) {
+            if (visitor == null) {
+                for (RideListener listener : current) {
+                    listener.onNullVisitor(this);
+                }
+                continue;
+            }
+            if (isQueueFull()) {
+                rejectVisitor(visitor, current);
+                continue;
+            }
+
+            if (this.interner != null) {
+                visitor = this.interner.intern(visitor);
+            }
+            this.waitingQueue.offer(visitor, QueueLane.STANDARD, now);
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToQueue(this, visitor);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.recordQueueDepth(this.waitingQueue.size());
+        }
+    }
+
+    /**
+     * Removes up to the given number of visitors from the front of the queue.
+     *
+     * @param buffer the collection that receives the removed visitors
+     * @param maxVisitors the maximum number of visitors to be removed
+     * @return the number of visitors removed from the queue
+     */
+    @Override
+    public int drainQueue(Collection<? super Visitor> buffer, int maxVisitors) {
+        RideListener[] current = this.listeners;
+        RideMetrics currentMetrics = this.metrics;
+        long now = currentMetrics != null ? tick() : 0;
+        int removed = 0;
+        Visitor visitor;
+        while (removed < maxVisitors && (visitor = this.waitingQueue.poll(freeSeats(removed, maxVisitors))) != null) {
+            buffer.add(visitor);
+            removed++;
+            long queuedAt = this.waitingQueue.getLastQueuedAt();
+            if (currentMetrics != null && queuedAt != 0) {
+                currentMetrics.recordWaitTime(now - queuedAt);
+            }
+            for (RideListener listener : current) {
+                listener.onVisitorRemovedFromQueue(this, visitor);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.recordQueueDepth(this.waitingQueue.size());
+        }
+        return removed;
     }
 
     /**
@@ -230,12 +817,23 @@ public class Ride implements RideInterface {
     @Override
     public Visitor removeVisitorFromQueue() {
         if (waitingQueue.isEmpty()) {
-            System.out.println("Waiting queue is empty.");
+            for (RideListener listener : this.listeners) {
+                listener.onQueueEmpty(this);
+            }
             return null;
         }
 
         Visitor visitor = waitingQueue.poll();
-        System.out.println(visitor.getName() + " has been removed from the queue.");
+        if (this.metrics != null) {
+            long queuedAt = this.waitingQueue.getLastQueuedAt();
+            if (queuedAt != 0) {
+                this.metrics.recordWaitTime(tick() - queuedAt);
+            }
+            this.metrics.recordQueueDepth(this.waitingQueue.size());
+        }
+        for (RideListener listener : this.listeners) {
+            listener.onVisitorRemovedFromQueue(this, visitor);
+        }
         return visitor;
     }
 
@@ -256,29 +854,61 @@ public class Ride implements RideInterface {
     }
 
     /**
-     * Runs one cycle of the ride, processing up to the maximum number of riders.
+     * Runs one cycle of the ride, processing up to the maximum number of riders. Each rider is
+     * taken off the queue and added to the history before the next one, so listeners hear of a
+     * rider leaving the queue right before the rider is added to the history.
      */
     @Override
     public void runOneCycle() {
+        this.lastCycleRiders = 0;
         if (this.employee == null) {
-            System.out.println("No operator assigned. Ride cannot be run.");
+            for (RideListener listener : this.listeners) {
+                listener.onNoOperator(this);
+            }
             return;
         }
 
         if (this.waitingQueue.isEmpty()) {
-            System.out.println("There are no waiting visitors in the queue, the ride cannot be run.");
+            for (RideListener listener : this.listeners) {
+                listener.onNoWaitingVisitors(this);
+            }
             return;
         }
 
-        int removed = 0;
-        while (!this.waitingQueue.isEmpty() && removed < this.maxRider) {
-            Visitor visitor = removeVisitorFromQueue();
-            removed++;
-            addVisitorToHistory(visitor);
+        RideListener[] current = this.listeners;
+        RideMetrics currentMetrics = this.metrics;
+        long start = currentMetrics != null ? tick() : 0;
+        int riders = 0;
+        Visitor visitor;
+        while (riders < this.maxRider && (visitor = this.waitingQueue.poll(freeSeats(riders, this.maxRider))) != null) {
+            riders++;
+            long queuedAt = this.waitingQueue.getLastQueuedAt();
+            if (currentMetrics != null && queuedAt != 0) {
+                currentMetrics.recordWaitTime(start - queuedAt);
+            }
+            for (RideListener listener : current) {
+                listener.onVisitorRemovedFromQueue(this, visitor);
+            }
+
+            this.visitors.add(visitor);
+            indexVisitor(visitor);
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToHistory(this, visitor);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.recordQueueDepth(this.waitingQueue.size());
         }
+        retainHistory();
 
+        this.lastCycleRiders = riders;
         this.numOfCycles++;
-        System.out.println("Ride one cycle completed.");
+        if (currentMetrics != null) {
+            currentMetrics.recordCycleDuration(tick() - start);
+        }
+        for (RideListener listener : current) {
+            listener.onCycleCompleted(this, riders);
+        }
     }
 
     /**
@@ -290,11 +920,42 @@ public class Ride implements RideInterface {
     public void addVisitorToHistory(Visitor visitor) {
         if (visitor != null) {
             this.visitors.add(visitor);
-            System.out.println(visitor.getName() + " has taken the Ride.");
+            indexVisitor(visitor);
+            for (RideListener listener : this.listeners) {
+                listener.onVisitorAddedToHistory(this, visitor);
+            }
+            retainHistory();
             return;
         }
 
-        System.out.println("Visitor is null.");
+        for (RideListener listener : this.listeners) {
+            listener.onNullVisitor(this);
+        }
+    }
+
+    /**
+     * Adds a group of visitors to the ride history in a single pass.
+     *
+     * @param visitors the visitors to be added to the ride history
+     */
+    @Override
+    public void addVisitorsToHistory(Collection<? extends Visitor> visitors) {
+        RideListener[] current = this.listeners;
+        for (Visitor visitor : visitors) {
+            if (visitor == null) {
+                for (RideListener listener : current) {
+                    listener.onNullVisitor(this);
+                }
+                continue;
+            }
+
+            this.visitors.add(visitor);
+            indexVisitor(visitor);
+            for (RideListener listener : current) {
+                listener.onVisitorAddedToHistory(this, visitor);
+            }
+        }
+        retainHistory();
     }
 
     /**
@@ -310,17 +971,29 @@ public class Ride implements RideInterface {
             return false;
         }
 
-        for (Visitor v : this.visitors) {
-            if (v.getName().equals(visitor.getName())) {
-                System.out.println(visitor.getName() + " has taken the Ride.");
-                return true;
-            }
+        if (this.nameIndex.containsKey(visitor.getName()) || isInSpilledHistory(visitor.getName(), false)) {
+            System.out.println(visitor.getName() + " has taken the Ride.");
+            return true;
         }
 
         System.out.println(visitor.getName() + " has not taken the Ride.");
         return false;
     }
 
+    /**
+     * Checks if a visitor holding the given ticket ID has already taken the ride. Most ticket IDs
+     * that are not in the history are rejected by the ticket ID filter without a lookup.
+     *
+     * @param ticketId the ticket ID to be checked
+     * @return {@code true} if a visitor with this ticket has taken the ride, otherwise {@code false}
+     */
+    public boolean checkTicketFromHistory(String ticketId) {
+        if ((ticketId == null || this.ticketFilter.mightContain(ticketId)) && this.ticketIndex.containsKey(ticketId)) {
+            return true;
+        }
+        return isInSpilledHistory(ticketId, true);
+    }
+
     /**
      * Returns the number of visitors who have taken the ride.
      *
@@ -328,7 +1001,8 @@ public class Ride implements RideInterface {
      */
     @Override
     public int numberOfVisitors() {
-        int size = this.visitors.size();
+        long spilled = this.spilledHistory != null ? this.spilledHistory.getNumberOfVisitors() : 0;
+        int size = (int) Math.min(Integer.MAX_VALUE, this.visitors.size() + spilled);
         System.out.println(size + " of visitors has taken the Ride.");
         return size;
     }
@@ -350,4 +1024,267 @@ public class Ride implements RideInterface {
             System.out.println(visitor);
         }
     }
+
+    /**
+     * Checks whether the waiting queue has reached the ride's capacity.
+     *
+     * @return {@code true} if no more visitors may join the queue
+     */
+    private boolean isQueueFull() {
+        return this.maxCapacity > 0 && this.waitingQueue.size() >= this.maxCapacity;
+    }
+
+    /**
+     * Counts a visitor turned away from the full queue and reports it to the listeners.
+     *
+     * @param visitor the rejected visitor
+     * @param current the listeners to be notified
+     */
+    private void rejectVisitor(Visitor visitor, RideListener[] current) {
+        this.rejectedVisitors++;
+        for (RideListener listener : current) {
+            listener.onQueueFull(this, visitor);
+        }
+    }
+
+    /**
+     * Adds a visitor read from a file to the ride history without raising events, passing it
+     * through the interner if there is one.
+     *
+     * @param visitor the visitor to be added
+     */
+    private void addImportedVisitor(Visitor visitor) {
+        if (this.interner != null) {
+            visitor = this.interner.intern(visitor);
+        }
+        this.visitors.add(visitor);
+        indexVisitor(visitor);
+        retainHistory();
+    }
+
+    /**
+     * Gets the seats a party must fit in to board. A party that is too large for an empty cycle
+     * could never fit, so the first party of a cycle is seated whatever its size.
+     *
+     * @param taken the number of seats already taken
+     * @param seats the number of seats of the cycle
+     * @return the number of seats left, or {@link Integer#MAX_VALUE} if none is taken yet
+     */
+    private static int freeSeats(int taken, int seats) {
+        return taken == 0 ? Integer.MAX_VALUE : seats - taken;
+    }
+
+    /**
+     * Reads the clock that join and wait times are measured with, and keeps the reading as the
+     * time given to visitors who join on their own until the next cycle or batch.
+     *
+     * @return the current value of {@link System#nanoTime()}
+     */
+    private long tick() {
+        this.clock = System.nanoTime();
+        return this.clock;
+    }
+
+    /**
+     * Records a visitor of the ride history in the name and ticket ID indexes.
+     *
+     * @param visitor the visitor to be indexed
+     */
+    private void indexVisitor(Visitor visitor) {
+        this.nameIndex.merge(visitor.getName(), 1, Integer::sum);
+        String ticketId = visitor.getTicketId();
+        if (this.ticketIndex.merge(ticketId, 1, Integer::sum) == 1 && ticketId != null) {
+            if (this.ticketFilter.isFull()) {
+                rebuildTicketFilter(this.ticketIndex.size() * 2, this.ticketFilter.getFalsePositiveRate());
+            } else {
+                this.ticketFilter.add(ticketId);
+            }
+        }
+    }
+
+    /**
+     * Removes a visitor that has left the in-memory history from the name and ticket ID indexes.
+     * The ticket ID filter keeps the ticket ID until it is next rebuilt.
+     *
+     * @param visitor the visitor to be removed from the indexes
+     */
+    private void unindexVisitor(Visitor visitor) {
+        this.nameIndex.computeIfPresent(visitor.getName(), (name, count) -> count > 1 ? count - 1 : null);
+        this.ticketIndex.computeIfPresent(visitor.getTicketId(), (ticketId, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Moves the oldest visitors of the history to the spill file once the history has grown a
+     * quarter over the retention limit, so that spilling happens in segments rather than one
+     * visitor at a time. The visitors are removed from memory only after they have been written.
+     */
+    private void retainHistory() {
+        if (this.historyRetention <= 0
+                || this.visitors.size() < this.historyRetention + Math.max(1, this.historyRetention / 4)) {
+            return;
+        }
+
+        int count = this.visitors.size() - this.historyRetention;
+        List<Visitor> segment = new ArrayList<>(count);
+        Iterator<Visitor> it = this.visitors.iterator();
+        while (segment.size() < count) {
+            segment.add(it.next());
+        }
+        try {
+            this.spilledHistory.spill(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (Visitor visitor : segment) {
+            this.visitors.removeFirst();
+            unindexVisitor(visitor);
+        }
+        this.spilledRows += count;
+    }
+
+    /**
+     * Checks the spill file for a name or ticket ID that is not in the in-memory history.
+     *
+     * @param value the name or ticket ID to be checked
+     * @param isTicketId whether the value is a ticket ID rather than a name
+     * @return {@code true} if a spilled visitor has this name or ticket ID
+     */
+    private boolean isInSpilledHistory(String value, boolean isTicketId) {
+        if (this.spilledHistory == null) {
+            return false;
+        }
+
+        try {
+            return isTicketId ? this.spilledHistory.containsTicket(value) : this.spilledHistory.containsName(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the ticket ID filter by a new one holding every ticket ID of the history.
+     *
+     * @param expectedTickets the number of ticket IDs the new filter is sized for
+     * @param falsePositiveRate the false-positive rate of the new filter
+     */
+    private void rebuildTicketFilter(int expectedTickets, double falsePositiveRate) {
+        BloomFilter filter = new BloomFilter(Math.max(MIN_TICKET_FILTER_SIZE, expectedTickets), falsePositiveRate);
+        for (String ticketId : this.ticketIndex.keySet()) {
+            if (ticketId != null) {
+                filter.add(ticketId);
+            }
+        }
+        this.ticketFilter = filter;
+    }
+
+    /**
+     * Rebuilds the name and ticket ID indexes from the current ride history. This keeps the
+     * indexes in sync with any changes made to the list returned by {@link #getVisitors()}.
+     */
+    private void rebuildHistoryIndex() {
+        this.nameIndex.clear();
+        this.ticketIndex.clear();
+        this.ticketFilter = new BloomFilter(Math.max(MIN_TICKET_FILTER_SIZE, this.visitors.size()),
+                this.ticketFilter.getFalsePositiveRate());
+        for (Visitor visitor : this.visitors) {
+            indexVisitor(visitor);
+        }
+    }
+
+    /**
+     * The first visitors of a history in the order of a comparator, kept in a bounded max-heap of
+     * history positions. The root is the last of the visitors kept, so a visitor that comes
+     * before it replaces it. Visitors that compare equal are ordered by their position, which
+     * keeps the result the same as a stable sort.
+     */
+    private static final class TopVisitors {
+        private final Visitor[] history;
+        private final Comparator<? super Visitor> comparator;
+        private final int[] heap;
+        private int size;
+
+        private TopVisitors(Visitor[] history, Comparator<? super Visitor> comparator, int limit) {
+            this.history = history;
+            this.comparator = comparator;
+            this.heap = new int[limit];
+        }
+
+        /**
+         * Keeps the visitor at a position if it is among the first visitors seen so far.
+         */
+        private void offer(int position) {
+            if (size < heap.length) {
+                heap[size] = position;
+                siftUp(size++);
+            } else if (size > 0 && comesBefore(position, heap[0])) {
+                heap[0] = position;
+                siftDown(0, size);
+            }
+        }
+
+        /**
+         * Keeps the first visitors of another part of the history as well.
+         */
+        private void offerAll(TopVisitors other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.heap[i]);
+            }
+        }
+
+        /**
+         * Sorts the kept visitors in place and returns them in order.
+         */
+        private List<Visitor> toList() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            List<Visitor> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(history[heap[i]]);
+            }
+            return result;
+        }
+
+        private boolean comesBefore(int a, int b) {
+            int comparison = comparator.compare(history[a], history[b]);
+            return comparison < 0 || (comparison == 0 && a < b);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!comesBefore(heap[parent], heap[index])) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index, int end) {
+            while (true) {
+                int last = index;
+                int left = 2 * index + 1;
+                if (left < end && comesBefore(heap[last], heap[left])) {
+                    last = left;
+                }
+                if (left + 1 < end && comesBefore(heap[last], heap[left + 1])) {
+                    last = left + 1;
+                }
+                if (last == index) {
+                    return;
+                }
+                swap(index, last);
+                index = last;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int position = heap[a];
+            heap[a] = heap[b];
+            heap[b] = position;
+        }
+    }
 }
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The {@code RideHistoryBinary} class reads and writes ride history files in a compact binary
+ * format. A file starts with the magic bytes {@code RHIS} and a format version, followed by a
+ * dictionary of the distinct favorite attractions and then one record per visitor. Strings are
+ * stored as UTF-8 bytes prefixed with their length, numbers as variable-length integers, and the
+ * favorite attraction as an index into the dictionary.
+ *
+ * <p>The class can also be run as a tool that converts between the binary and CSV formats:
+ * {@code java RideHistoryBinary to-binary history.csv history.rhb} or
+ * {@code java RideHistoryBinary to-csv history.rhb history.csv}.
+ */
+public final class RideHistoryBinary {
+    private static final int MAGIC = 0x52484953;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAP_WINDOW = 1 << 28;
+
+    private RideHistoryBinary() {
+    }
+
+    /**
+     * Converts a ride history file between the CSV and binary formats.
+     *
+     * @param args {@code to-binary} or {@code to-csv}, followed by the input and output file paths
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 || !(args[0].equals("to-binary") || args[0].equals("to-csv"))) {
+            System.out.println("Usage: RideHistoryBinary (to-binary|to-csv) <input> <output>");
+            return;
+        }
+
+        try {
+            List<Visitor> visitors = new ArrayList<>();
+            if (args[0].equals("to-binary")) {
+                RideHistoryCsv.read(args[1], visitors::add);
+                write(args[2], visitors);
+            } else {
+                read(args[1], visitors::add);
+                RideHistoryCsv.write(args[2], visitors);
+            }
+            System.out.println("Converted " + visitors.size() + " visitors to " + args[2] + ".");
+        } catch (Exception e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a binary ride history file and passes every visitor to the given consumer, in file
+     * order. The file is memory-mapped in windows of 256 MiB and decoded directly from the mapped
+     * buffers, so files larger than 2 GiB can be read; a file holds at most 2^31 - 1 visitors.
+     *
+     * @param filePath the path to the file to read
+     * @param consumer the consumer that receives each visitor read from the file
+     * @throws IOException if the file cannot be read or is not a ride history file
+     */
+    public static void read(String filePath, Consumer<Visitor> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            Reader reader = new Reader(channel);
+            if (channel.size() < 6 || reader.getInt() != MAGIC) {
+                throw new IOException("Not a ride history file: " + filePath);
+            }
+            int version = reader.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ride history version " + version + ": " + filePath);
+            }
+
+            String[] attractions = new String[reader.getVarInt()];
+            for (int i = 0; i < attractions.length; i++) {
+                attractions[i] = reader.getString();
+            }
+
+            int count = reader.getVarInt();
+            for (int i = 0; i < count; i++) {
+                String name = reader.getString();
+                int age = decodeZigZag(reader.getVarInt());
+                String phone = reader.getString();
+                String ticketId = reader.getString();
+                String favoriteAttraction = attractions[reader.getVarInt()];
+                consumer.accept(new Visitor(name, age, phone, ticketId, favoriteAttraction));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt ride history file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Writes the given visitors to a binary ride history file, replacing any existing content.
+     *
+     * @param filePath the path to the file to write
+     * @param visitors the visitors to be written, in order
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String filePath, Iterable<Visitor> visitors) throws IOException {
+        Map<String, Integer> attractions = new LinkedHashMap<>();
+        int count = 0;
+        for (Visitor visitor : visitors) {
+            attractions.putIfAbsent(visitor.getFavoriteAttraction(), attractions.size());
+            count++;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer writer = new Writer(channel);
+            writer.putInt(MAGIC);
+            writer.putShort(VERSION);
+            writer.putVarInt(attractions.size());
+            for (String attraction : attractions.keySet()) {
+                writer.putString(attraction);
+            }
+
+            writer.putVarInt(count);
+            for (Visitor visitor : visitors) {
+                writer.putString(visitor.getName());
+                writer.putVarInt(encodeZigZag(visitor.getAge()));
+                writer.putString(visitor.getPhoneNumber());
+                writer.putString(visitor.getTicketId());
+                writer.putVarInt(attractions.get(visitor.getFavoriteAttraction()));
+            }
+            writer.flush();
+        }
+    }
+
+    private static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Decodes values from a file that is memory-mapped one window at a time. Before a value is
+     * read, the next window is mapped if the value could reach past the end of the current one.
+     */
+    private static final class Reader {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private ByteBuffer buffer;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.buffer = ByteBuffer.allocate(0);
+        }
+
+        private int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        private int getShort() throws IOException {
+            ensure(2);
+            return buffer.getShort();
+        }
+
+        /**
+         * Reads an unsigned variable-length integer of seven bits per byte.
+         */
+        private int getVarInt() throws IOException {
+            ensure(5);
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed variable-length integer");
+        }
+
+        /**
+         * Reads a length-prefixed UTF-8 string. A length of zero stands for {@code null}, and any
+         * other length is one more than the number of bytes.
+         */
+        private String getString() throws IOException {
+            int length = getVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Maps a new window starting at the current position if fewer than the given number of
+         * bytes are left in the current window and the file has more.
+         */
+        private void ensure(int bytes) throws IOException {
+            long position = windowStart + buffer.position();
+            if (buffer.remaining() >= bytes || position + buffer.remaining() >= size) {
+                return;
+            }
+
+            long length = Math.min(size - position, Math.max(MAP_WINDOW, bytes));
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+        }
+    }
+
+    /**
+     * Encodes values into a buffer and writes the buffer to a channel when it is full.
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putShort(int value) throws IOException {
+            ensure(2);
+            buffer.putShort((short) value);
+        }
+
+        private void putVarInt(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                buffer.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void putString(String value) throws IOException {
+            if (value == null) {
+                putVarInt(0);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length + 1);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
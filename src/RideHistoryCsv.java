@@ -0,0 +1,502 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * The {@code RideHistoryCsv} class reads and writes ride history files in the CSV format used by
+ * {@link Ride}: one visitor per line, with the fields name, age, phone number, ticket ID and
+ * favorite attraction separated by commas. Files are read and written through a {@link FileChannel}
+ * with a large buffer, and lines are parsed in a single pass over the bytes without regular
+ * expressions or intermediate strings.
+ */
+public final class RideHistoryCsv {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 1L << 26;
+    private static final int FIELD_COUNT = 5;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private RideHistoryCsv() {
+    }
+
+    /**
+     * Reads a ride history file and passes every visitor to the given consumer, in file order.
+     * Lines are accepted by the rules of the original {@code String.split(",")} importer: empty
+     * fields at the end of a line are dropped, and blank lines and lines that are not left with
+     * exactly five fields are skipped. So {@code a,1,p,t,x,,} is read as {@code a,1,p,t,x}, while
+     * {@code a,1,p,t,} is skipped.
+     *
+     * @param filePath the path to the file to read
+     * @param consumer the consumer that receives each visitor read from the file
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if the age of a visitor is not a valid number
+     */
+    public static void read(String filePath, Consumer<Visitor> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            readLines(channel, true, (buffer, start, end) -> emit(buffer, start, end, consumer));
+        }
+    }
+
+    /**
+     * Reads a ride history file in parallel. The file is memory-mapped in chunks that end on line
+     * boundaries, the chunks are parsed as separate tasks on the given pool, and the visitors of
+     * all chunks are returned in file order. The same lines are accepted as by
+     * {@link #read(String, Consumer)}.
+     *
+     * @param filePath the path to the file to read
+     * @param pool the pool that parses the chunks
+     * @return the visitors read from the file, in file order
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if the age of a visitor is not a valid number
+     */
+    public static List<Visitor> readParallel(String filePath, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                    Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L)));
+
+            List<ForkJoinTask<List<Visitor>>> tasks = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long end = start + chunkSize >= size ? size : findLineEnd(channel, start + chunkSize, size);
+                long chunkStart = start;
+                tasks.add(pool.submit(() -> readChunk(channel, chunkStart, end)));
+                start = end;
+            }
+
+            List<Visitor> visitors = new ArrayList<>();
+            for (ForkJoinTask<List<Visitor>> task : tasks) {
+                visitors.addAll(task.join());
+            }
+            return visitors;
+        }
+    }
+
+    /**
+     * Writes the given visitors to a ride history file, replacing any existing content.
+     * The rows are collected in a buffer that is written out whenever it is full.
+     *
+     * @param filePath the path to the file to write
+     * @param visitors the visitors to be written, in order
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String filePath, Iterable<Visitor> visitors) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RowWriter writer = new RowWriter(channel);
+            for (Visitor visitor : visitors) {
+                writer.write(visitor);
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * Reads a channel from its current position and passes every line to the given handler,
+     * without the line feed. The buffer grows when a line is longer than the buffer.
+     *
+     * @param channel the channel to read
+     * @param includeLastLine whether a last line that is not terminated by a line feed is passed
+     *                        to the handler as well
+     * @param handler the handler that receives each line
+     * @return the number of bytes read up to and including the last line feed
+     * @throws IOException if the channel cannot be read
+     */
+    static long readLines(FileChannel channel, boolean includeLastLine, LineHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long consumed = 0;
+        while (true) {
+            boolean endOfFile = channel.read(buffer) < 0;
+            buffer.flip();
+
+            int lineStart = buffer.position();
+            int limit = buffer.limit();
+            for (int i = lineStart; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    handler.accept(buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+
+            if (endOfFile) {
+                if (includeLastLine) {
+                    handler.accept(buffer, lineStart, limit);
+                }
+                return consumed + lineStart;
+            } else if (lineStart == 0 && limit == buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                consumed += lineStart;
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+    }
+
+    /**
+     * Appends the given visitors to the end of a ride history file, creating the file if it does
+     * not exist.
+     *
+     * @param filePath the path to the file to append to
+     * @param visitors the visitors to be appended, in order
+     * @return the size of the file after the visitors were appended
+     * @throws IOException if the file cannot be written
+     */
+    public static long append(String filePath, Iterator<? extends Visitor> visitors) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            RowWriter writer = new RowWriter(channel);
+            while (visitors.hasNext()) {
+                writer.write(visitors.next());
+            }
+            writer.flush();
+            return channel.size();
+        }
+    }
+
+    /**
+     * Parses one line of a ride history file.
+     *
+     * @param buffer the buffer holding the line
+     * @param start the index of the first byte of the line
+     * @param end the index just past the last byte of the line
+     * @return the visitor described by the line, or {@code null} if the line is blank or does not
+     *         have exactly five fields
+     * @throws NumberFormatException if the age field is not a valid number
+     */
+    static Visitor parseLine(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        return start == end ? null : parseFields(buffer, start, end);
+    }
+
+    /**
+     * Parses one line of an imported ride history file by the rules of the original importer,
+     * which trimmed the line, split it at commas and dropped the empty fields at its end. Unlike
+     * {@link #parseLine(ByteBuffer, int, int)}, a line whose favorite attraction is empty is
+     * therefore skipped, and empty fields after the fifth one are ignored.
+     *
+     * @return the visitor described by the line, or {@code null} if the line is skipped
+     * @throws NumberFormatException if the age field is not a valid number
+     */
+    private static Visitor parseImportedLine(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        while (end > start && buffer.get(end - 1) == ',') {
+            end--;
+        }
+        return start == end ? null : parseFields(buffer, start, end);
+    }
+
+    /**
+     * Parses the five fields of a line whose surrounding blanks have been removed.
+     *
+     * @return the visitor, or {@code null} if the line does not have exactly five fields
+     */
+    private static Visitor parseFields(ByteBuffer buffer, int start, int end) {
+
+        int first = -1;
+        int second = -1;
+        int third = -1;
+        int fourth = -1;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                switch (count++) {
+                    case 0:
+                        first = i;
+                        break;
+                    case 1:
+                        second = i;
+                        break;
+                    case 2:
+                        third = i;
+                        break;
+                    case 3:
+                        fourth = i;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        }
+        if (count != FIELD_COUNT - 1) {
+            return null;
+        }
+
+        String name = decode(buffer, start, first);
+        int age = parseInt(buffer, first + 1, second);
+        String phone = decode(buffer, second + 1, third);
+        String ticketId = decode(buffer, third + 1, fourth);
+        String favoriteAttraction = decode(buffer, fourth + 1, end);
+        return new Visitor(name, age, phone, ticketId, favoriteAttraction);
+    }
+
+    /**
+     * Finds the end of the line that contains the given position.
+     *
+     * @return the position just past the next line feed, or the file size if there is none
+     */
+    private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Memory-maps one chunk of a file and parses all of its lines.
+     *
+     * @return the visitors of the chunk, in file order
+     */
+    private static List<Visitor> readChunk(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        List<Visitor> visitors = new ArrayList<>();
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                emit(buffer, lineStart, i, visitors::add);
+                lineStart = i + 1;
+            }
+        }
+        emit(buffer, lineStart, limit, visitors::add);
+        return visitors;
+    }
+
+    /**
+     * Parses a line and passes the visitor to the consumer if the line describes one.
+     */
+    private static void emit(ByteBuffer buffer, int start, int end, Consumer<Visitor> consumer) {
+        Visitor visitor = parseImportedLine(buffer, start, end);
+        if (visitor != null) {
+            consumer.accept(visitor);
+        }
+    }
+
+    /**
+     * Decodes a field of a line as a UTF-8 string.
+     */
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a field of a line as a decimal integer, accepting the same input as
+     * {@link Integer#parseInt(String)}.
+     */
+    static int parseInt(ByteBuffer buffer, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                throw new NumberFormatException("For input string: \"" + decode(buffer, start, end) + "\"");
+            }
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + decode(buffer, start, end) + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + decode(buffer, start, end) + "\"");
+            }
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + decode(buffer, start, end) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Receives the lines found by {@link #readLines(FileChannel, boolean, LineHandler)}.
+     */
+    interface LineHandler {
+        /**
+         * Handles one line.
+         *
+         * @param buffer the buffer holding the line
+         * @param start the index of the first byte of the line
+         * @param end the index just past the last byte of the line
+         */
+        void accept(ByteBuffer buffer, int start, int end);
+    }
+
+    /**
+     * Encodes visitors as CSV rows into a buffer and writes the buffer to a channel when it is full.
+     */
+    static final class RowWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        RowWriter(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        /**
+         * Adds one visitor as a CSV row.
+         */
+        void write(Visitor visitor) throws IOException {
+            putString(visitor.getName());
+            putByte((byte) ',');
+            putInt(visitor.getAge());
+            putByte((byte) ',');
+            putString(visitor.getPhoneNumber());
+            putByte((byte) ',');
+            putString(visitor.getTicketId());
+            putByte((byte) ',');
+            putString(visitor.getFavoriteAttraction());
+            putBytes(LINE_SEPARATOR);
+        }
+
+        /**
+         * Adds text without a line separator, for example a record type before a row.
+         */
+        void writeText(String text) throws IOException {
+            putString(text);
+        }
+
+        /**
+         * Adds a decimal integer without a line separator.
+         */
+        void writeInt(int value) throws IOException {
+            putInt(value);
+        }
+
+        /**
+         * Ends the current line.
+         */
+        void endLine() throws IOException {
+            putBytes(LINE_SEPARATOR);
+        }
+
+        /**
+         * Writes all buffered rows to the channel.
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void putByte(byte b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(b);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void putString(String value) throws IOException {
+            if (value == null) {
+                value = "null";
+            }
+
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    putBytes(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            if (buffer.remaining() < length) {
+                putBytes(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                buffer.put((byte) value.charAt(i));
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < 11) {
+                flush();
+            }
+            if (value == Integer.MIN_VALUE) {
+                putBytes(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            int end = buffer.position() + digits;
+            for (int i = end - 1; i >= buffer.position(); i--) {
+                buffer.put(i, (byte) ('0' + value % 10));
+                value /= 10;
+            }
+            buffer.position(end);
+        }
+    }
+}
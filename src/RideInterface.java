@@ -1,9 +1,18 @@
+import java.util.Collection;
+
 /**
  * The {@code RideInterface} defines the basic operations for managing a ride at a theme park.
  * It includes operations to handle the queue of visitors waiting for the ride, manage the
  * ride history, and simulate the execution of a ride cycle.
  */
 public interface RideInterface {
+    /**
+     * Gets the name of the ride.
+     *
+     * @return the name of the ride
+     */
+    String getRideName();
+
     /**
      * Adds a visitor to the queue for the ride.
      *
@@ -11,6 +20,41 @@ public interface RideInterface {
      */
     void addVisitorToQueue(Visitor visitor);
 
+    /**
+     * Adds a visitor to the queue for the ride unless the queue is at the ride's capacity.
+     * A visitor who is turned away is counted in {@link #getRejectedVisitors()}.
+     *
+     * @param visitor the visitor to be added to the queue
+     * @return {@code true} if the visitor was added, {@code false} if the queue is full or the
+     *         visitor is {@code null}
+     */
+    boolean offerVisitor(Visitor visitor);
+
+    /**
+     * Adds a visitor to the queue for the ride, or to the queue of an alternative ride if this
+     * queue is full.
+     *
+     * @param visitor the visitor to be added to a queue
+     * @param alternative the ride the visitor is sent to if this queue is full, or {@code null}
+     * @return the ride whose queue the visitor joined, or {@code null} if both queues are full
+     */
+    default RideInterface offerVisitor(Visitor visitor, RideInterface alternative) {
+        if (offerVisitor(visitor)) {
+            return this;
+        }
+        if (visitor != null && alternative != null && alternative.offerVisitor(visitor)) {
+            return alternative;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of visitors turned away because the queue was at the ride's capacity.
+     *
+     * @return the number of rejected visitors
+     */
+    long getRejectedVisitors();
+
     /**
      * Removes a visitor from the front of the queue.
      *
@@ -18,6 +62,24 @@ public interface RideInterface {
      */
     Visitor removeVisitorFromQueue();
 
+    /**
+     * Adds a group of visitors to the queue, in the order of the collection. {@code null}
+     * elements are skipped.
+     *
+     * @param visitors the visitors to be added to the queue
+     */
+    void addVisitorsToQueue(Collection<? extends Visitor> visitors);
+
+    /**
+     * Removes up to the given number of visitors from the front of the queue and adds them to
+     * the given collection, in queue order.
+     *
+     * @param buffer the collection that receives the removed visitors
+     * @param maxVisitors the maximum number of visitors to be removed
+     * @return the number of visitors removed from the queue
+     */
+    int drainQueue(Collection<? super Visitor> buffer, int maxVisitors);
+
     /**
      * Prints the details of all visitors currently in the queue.
      */
@@ -37,6 +99,14 @@ public interface RideInterface {
      */
     void addVisitorToHistory(Visitor visitor);
 
+    /**
+     * Adds a group of visitors to the ride history, in the order of the collection.
+     * {@code null} elements are skipped.
+     *
+     * @param visitors the visitors to be added to the ride history
+     */
+    void addVisitorsToHistory(Collection<? extends Visitor> visitors);
+
     /**
      * Checks if a visitor is already in the ride history.
      *
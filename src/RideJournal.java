@@ -0,0 +1,464 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The {@code RideJournal} class implements the {@link RideListener} interface and keeps the ride
+ * history durable between exports. Every visitor added to the history and every completed cycle
+ * is appended to a journal file as one line: {@code H,<ride history row>} or
+ * {@code C,<riders>}. Appends only go to a buffer; the buffer is written and forced to disk as one
+ * group once a number of records is pending or a time interval has passed, so a busy ride pays
+ * for one {@code fsync} per group instead of one per visitor. A background thread also forces the
+ * last group when the ride is idle. At most the records of the last group can be lost in a crash.
+ *
+ * <p>When the journal has grown by a number of records, it is compacted: the history in memory
+ * and the cycle count are written to a snapshot file, which atomically replaces the previous one,
+ * and the journal is started again empty. Both files begin with a generation line {@code G,<n>}; a
+ * journal older than the snapshot was already compacted into it and is ignored, so a crash
+ * during compaction never replays a record twice. When the ride keeps older visitors in a
+ * {@link SpilledRideHistory}, the spill file is forced to disk and kept, and the snapshot records
+ * its size as {@code S,<bytes>}; on recovery the spill file is cut back to that size, since the
+ * visitors spilled after the compaction are replayed from the journal.
+ *
+ * <p>A journal must be replayed with {@link Ride#recoverFromJournal(RideJournal)} before it
+ * records anything. Replay ignores a last line that was only partly written. The history is
+ * restored in the order the visitors were added, except for the part taken from a snapshot,
+ * which has the order of the history at the time of the compaction. Imports of the ride history
+ * are not journaled until the next compaction.
+ */
+public class RideJournal implements RideListener, Closeable {
+    private static final int DEFAULT_SYNC_BATCH_SIZE = 256;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 100_000;
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int syncBatchSize;
+    private final long syncIntervalNanos;
+    private final int compactionThreshold;
+    private final FileChannel channel;
+    private final RideHistoryCsv.RowWriter writer;
+    private final ScheduledExecutorService syncer;
+    private long generation;
+    private int pendingRecords;
+    private int recordsSinceCompaction;
+    private long lastSync;
+    private long syncCount;
+    private long snapshotSpillSize;
+    private boolean replayed;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructor that opens a journal, forcing every 256 records or 50 milliseconds and
+     * compacting every 100,000 records.
+     *
+     * @param journalPath the path to the journal file
+     * @param snapshotPath the path to the snapshot file
+     * @throws IOException if the journal file cannot be opened
+     */
+    public RideJournal(String journalPath, String snapshotPath) throws IOException {
+        this(journalPath, snapshotPath, DEFAULT_SYNC_BATCH_SIZE, DEFAULT_SYNC_INTERVAL_MILLIS,
+                DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Constructor that opens a journal with the given group-commit and compaction settings.
+     *
+     * @param journalPath the path to the journal file
+     * @param snapshotPath the path to the snapshot file
+     * @param syncBatchSize the number of pending records that causes the journal to be forced
+     * @param syncIntervalMillis the longest time a record stays pending, in milliseconds
+     * @param compactionThreshold the number of records after which the journal is compacted into
+     *                            the snapshot, or zero to compact only on request
+     * @throws IOException if the journal file cannot be opened
+     * @throws IllegalArgumentException if the batch size or the interval is not positive, or the
+     *                                  threshold is negative
+     */
+    public RideJournal(String journalPath, String snapshotPath, int syncBatchSize, long syncIntervalMillis,
+                       int compactionThreshold) throws IOException {
+        if (syncBatchSize <= 0 || syncIntervalMillis <= 0 || compactionThreshold < 0) {
+            throw new IllegalArgumentException("Invalid journal settings: batch size " + syncBatchSize
+                    + ", interval " + syncIntervalMillis + ", compaction threshold " + compactionThreshold);
+        }
+
+        this.journalPath = Paths.get(journalPath);
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.syncBatchSize = syncBatchSize;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.compactionThreshold = compactionThreshold;
+        this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writer = new RideHistoryCsv.RowWriter(this.channel);
+        this.syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ride-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the number of times the journal has been forced to disk.
+     *
+     * @return the number of group commits
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Reads the snapshot and then the journal, and passes every visitor of the recorded history
+     * to the given consumer, in order. A partly written last line is removed from the journal,
+     * after which the journal accepts new records.
+     *
+     * @param history the consumer that receives each visitor of the history
+     * @return the number of cycles recorded in the snapshot and the journal
+     * @throws IOException if a file cannot be read or the journal cannot be repaired
+     * @throws IllegalArgumentException if a file contains an invalid record
+     * @throws IllegalStateException if the journal has already been replayed or is closed
+     */
+    public synchronized int replay(Consumer<Visitor> history) throws IOException {
+        if (replayed || closed) {
+            throw new IllegalStateException("Journal has already been replayed: " + journalPath);
+        }
+
+        Replay replay = new Replay(history);
+        if (Files.exists(snapshotPath)) {
+            try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                RideHistoryCsv.readLines(snapshot, false, replay::apply);
+            }
+        }
+        long snapshotGeneration = Math.max(0, replay.generation);
+
+        replay.startJournal(snapshotGeneration);
+        channel.position(0);
+        long validLength = RideHistoryCsv.readLines(channel, false, replay::apply);
+        if (replay.generation < snapshotGeneration) {
+            startGeneration(snapshotGeneration);
+        } else {
+            generation = replay.generation;
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+
+        snapshotSpillSize = replay.spillSize;
+        replayed = true;
+        lastSync = System.nanoTime();
+        return replay.cycles;
+    }
+
+    /**
+     * Gets the size the ride's spill file had when the replayed snapshot was written.
+     *
+     * @return the size of the spill file in bytes, or 0 if there is no snapshot or the ride had
+     *         not spilled any visitors
+     */
+    public synchronized long getSnapshotSpillSize() {
+        return snapshotSpillSize;
+    }
+
+    /**
+     * Forces all pending records to disk.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        if (pendingRecords == 0) {
+            return;
+        }
+
+        writer.flush();
+        channel.force(false);
+        pendingRecords = 0;
+        lastSync = System.nanoTime();
+        syncCount++;
+    }
+
+    /**
+     * Writes the given history and cycle count to a new snapshot that replaces the previous one,
+     * and starts the journal again empty.
+     *
+     * @param history the whole ride history
+     * @param numOfCycles the number of cycles the ride has completed
+     * @throws IOException if the snapshot or the journal cannot be written
+     */
+    public void compact(Iterable<Visitor> history, int numOfCycles) throws IOException {
+        compact(history, numOfCycles, null);
+    }
+
+    /**
+     * Writes the given history in memory and cycle count to a new snapshot that replaces the
+     * previous one, together with the size of the spill file that holds the older visitors, and
+     * starts the journal again empty. The spill file is forced to disk first.
+     *
+     * @param history the ride history kept in memory
+     * @param numOfCycles the number of cycles the ride has completed
+     * @param spilledHistory the spill file of the ride, or {@code null} if it has none
+     * @throws IOException if the spill file cannot be forced, or the snapshot or the journal
+     *                     cannot be written
+     */
+    public synchronized void compact(Iterable<Visitor> history, int numOfCycles, SpilledRideHistory spilledHistory)
+            throws IOException {
+        ensureWritable();
+        long spillSize = 0;
+        if (spilledHistory != null) {
+            spilledHistory.force();
+            spillSize = spilledHistory.getFileSize();
+        }
+        long next = generation + 1;
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel snapshot = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RideHistoryCsv.RowWriter snapshotWriter = new RideHistoryCsv.RowWriter(snapshot);
+            writeRecord(snapshotWriter, 'G', next);
+            writeRecord(snapshotWriter, 'N', numOfCycles);
+            if (spillSize > 0) {
+                writeRecord(snapshotWriter, 'S', spillSize);
+            }
+            for (Visitor visitor : history) {
+                snapshotWriter.writeText("H,");
+                snapshotWriter.write(visitor);
+            }
+            snapshotWriter.flush();
+            snapshot.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        writer.flush();
+        startGeneration(next);
+        recordsSinceCompaction = 0;
+    }
+
+    /**
+     * Forces all pending records to disk and closes the journal.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (replayed && failure == null) {
+                    sync();
+                }
+            } finally {
+                closed = true;
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onVisitorAddedToHistory(RideInterface ride, Visitor visitor) {
+        ensureWritable();
+        try {
+            writer.writeText("H,");
+            writer.write(visitor);
+            recordAppended();
+            compactIfDue(ride);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Failed to write ride journal: " + journalPath, e);
+        }
+    }
+
+    @Override
+    public synchronized void onCycleCompleted(RideInterface ride, int riders) {
+        ensureWritable();
+        try {
+            writeRecord(writer, 'C', riders);
+            recordAppended();
+            compactIfDue(ride);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Failed to write ride journal: " + journalPath, e);
+        }
+    }
+
+    /**
+     * Compacts the journal into the snapshot once the compaction threshold has been reached. The
+     * check follows every record, so a ride whose history only grows through
+     * {@code addVisitorToHistory} is compacted as well as one that runs cycles.
+     */
+    private void compactIfDue(RideInterface ride) throws IOException {
+        if (compactionThreshold > 0 && recordsSinceCompaction >= compactionThreshold && ride instanceof Ride) {
+            Ride journaled = (Ride) ride;
+            compact(journaled.getVisitors(), journaled.getNumOfCycles(), journaled.getSpilledHistory());
+        }
+    }
+
+    /**
+     * Counts an appended record and forces the journal if the batch is full or the oldest
+     * pending record has waited long enough.
+     */
+    private void recordAppended() throws IOException {
+        pendingRecords++;
+        recordsSinceCompaction++;
+        if (pendingRecords >= syncBatchSize || System.nanoTime() - lastSync >= syncIntervalNanos) {
+            sync();
+        }
+    }
+
+    /**
+     * Forces pending records from the background thread, so that an idle ride does not keep its
+     * last records in memory.
+     */
+    private synchronized void syncInBackground() {
+        if (!replayed || closed || failure != null) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Empties the journal and writes the generation line it starts with.
+     */
+    private void startGeneration(long next) throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        writeRecord(writer, 'G', next);
+        writer.flush();
+        channel.force(true);
+        generation = next;
+        pendingRecords = 0;
+        lastSync = System.nanoTime();
+    }
+
+    private void ensureWritable() {
+        if (!replayed || closed) {
+            throw new IllegalStateException("Journal is not open for writing: " + journalPath);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Failed to write ride journal: " + journalPath, failure);
+        }
+    }
+
+    private static void writeRecord(RideHistoryCsv.RowWriter writer, char type, long value) throws IOException {
+        writer.writeText(type + "," + value);
+        writer.endLine();
+    }
+
+    /**
+     * The state of a replay: the generation of the file being read, whether its records are
+     * skipped because they are already in the snapshot, the number of cycles seen so far, and the
+     * size of the spill file recorded in the snapshot.
+     */
+    private static final class Replay {
+        private final Consumer<Visitor> history;
+        private long minimumGeneration;
+        private long generation = -1;
+        private boolean skipping;
+        private int cycles;
+        private long spillSize;
+
+        private Replay(Consumer<Visitor> history) {
+            this.history = history;
+        }
+
+        /**
+         * Prepares to read a journal, whose records are only used if it is not older than the
+         * snapshot.
+         */
+        private void startJournal(long snapshotGeneration) {
+            minimumGeneration = snapshotGeneration;
+            generation = -1;
+            skipping = true;
+        }
+
+        /**
+         * Applies one line of the snapshot or the journal.
+         */
+        private void apply(ByteBuffer buffer, int start, int end) {
+            while (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            if (end - start < 2 || buffer.get(start + 1) != ',') {
+                throw invalidRecord(buffer, start, end);
+            }
+
+            switch (buffer.get(start)) {
+                case 'G':
+                    generation = parseLong(buffer, start, end);
+                    skipping = generation < minimumGeneration;
+                    break;
+                case 'N':
+                    if (!skipping) {
+                        cycles = RideHistoryCsv.parseInt(buffer, start + 2, end);
+                    }
+                    break;
+                case 'S':
+                    if (!skipping) {
+                        spillSize = parseLong(buffer, start, end);
+                    }
+                    break;
+                case 'C':
+                    if (!skipping) {
+                        cycles++;
+                    }
+                    break;
+                case 'H':
+                    if (!skipping) {
+                        Visitor visitor = RideHistoryCsv.parseLine(buffer, start + 2, end);
+                        if (visitor == null) {
+                            throw invalidRecord(buffer, start, end);
+                        }
+                        history.accept(visitor);
+                    }
+                    break;
+                default:
+                    throw invalidRecord(buffer, start, end);
+            }
+        }
+
+        /**
+         * Parses the non-negative number that follows the record type, such as a generation or a
+         * number of bytes.
+         */
+        private static long parseLong(ByteBuffer buffer, int start, int end) {
+            if (end - start < 3) {
+                throw invalidRecord(buffer, start, end);
+            }
+            long value = 0;
+            for (int i = start + 2; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                    throw invalidRecord(buffer, start, end);
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private static IllegalArgumentException invalidRecord(ByteBuffer buffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new IllegalArgumentException("Invalid journal record: "
+                    + new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The {@code RideListener} interface receives the events raised by a ride while it manages its
+ * queue, its history and its cycles. Every method has an empty default implementation, so a
+ * listener only overrides the events it is interested in. Listeners are called on the thread
+ * that performed the operation and should return quickly.
+ */
+public interface RideListener {
+    /**
+     * Called after a visitor has been added to the waiting queue.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor added to the queue
+     */
+    default void onVisitorAddedToQueue(RideInterface ride, Visitor visitor) {
+    }
+
+    /**
+     * Called after a visitor has been removed from the front of the waiting queue.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor removed from the queue
+     */
+    default void onVisitorRemovedFromQueue(RideInterface ride, Visitor visitor) {
+    }
+
+    /**
+     * Called when a visitor is turned away because the waiting queue is at its capacity.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor who was not added to the queue
+     */
+    default void onQueueFull(RideInterface ride, Visitor visitor) {
+    }
+
+    /**
+     * Called when a visitor is requested from an empty waiting queue.
+     *
+     * @param ride the ride that raised the event
+     */
+    default void onQueueEmpty(RideInterface ride) {
+    }
+
+    /**
+     * Called after a visitor has been added to the ride history.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor added to the history
+     */
+    default void onVisitorAddedToHistory(RideInterface ride, Visitor visitor) {
+    }
+
+    /**
+     * Called after a ride cycle has been completed.
+     *
+     * @param ride the ride that raised the event
+     * @param riders the number of visitors who took the ride in this cycle
+     */
+    default void onCycleCompleted(RideInterface ride, int riders) {
+    }
+
+    /**
+     * Called when a cycle cannot be run because no operator is assigned to the ride.
+     *
+     * @param ride the ride that raised the event
+     */
+    default void onNoOperator(RideInterface ride) {
+    }
+
+    /**
+     * Called when a cycle cannot be run because there are no visitors waiting.
+     *
+     * @param ride the ride that raised the event
+     */
+    default void onNoWaitingVisitors(RideInterface ride) {
+    }
+
+    /**
+     * Called when a {@code null} visitor is passed to the queue or the history.
+     *
+     * @param ride the ride that raised the event
+     */
+    default void onNullVisitor(RideInterface ride) {
+    }
+}
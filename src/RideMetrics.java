@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code RideMetrics} class collects the timing of a ride while it runs: how long each
+ * visitor waited between joining the queue and taking the ride, how long each cycle took, and
+ * how deep the waiting queue is. The ride records into it on its own thread, and operators can
+ * call {@link #snapshot()} from any other thread while the ride keeps running.
+ */
+public class RideMetrics {
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram cycleDurations;
+    private final AtomicLong queueDepth;
+    private final AtomicLong maxQueueDepth;
+
+    /**
+     * Default constructor that creates empty metrics.
+     */
+    public RideMetrics() {
+        this.waitTimes = new LatencyHistogram();
+        this.cycleDurations = new LatencyHistogram();
+        this.queueDepth = new AtomicLong();
+        this.maxQueueDepth = new AtomicLong();
+    }
+
+    /**
+     * Records the time a visitor waited in the queue.
+     *
+     * @param nanos the wait time in nanoseconds
+     */
+    public void recordWaitTime(long nanos) {
+        waitTimes.record(nanos);
+    }
+
+    /**
+     * Records the time a ride cycle took.
+     *
+     * @param nanos the cycle duration in nanoseconds
+     */
+    public void recordCycleDuration(long nanos) {
+        cycleDurations.record(nanos);
+    }
+
+    /**
+     * Records the current depth of the waiting queue.
+     *
+     * @param depth the number of visitors waiting
+     */
+    public void recordQueueDepth(int depth) {
+        queueDepth.lazySet(depth);
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.lazySet(depth);
+        }
+    }
+
+    /**
+     * Takes a copy of the current metrics.
+     *
+     * @return a snapshot of the metrics
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(waitTimes.snapshot(), cycleDurations.snapshot(),
+                queueDepth.get(), maxQueueDepth.get());
+    }
+
+    /**
+     * The {@code Snapshot} class is an immutable copy of a ride's metrics.
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot waitTimes;
+        private final LatencyHistogram.Snapshot cycleDurations;
+        private final long queueDepth;
+        private final long maxQueueDepth;
+
+        private Snapshot(LatencyHistogram.Snapshot waitTimes, LatencyHistogram.Snapshot cycleDurations,
+                         long queueDepth, long maxQueueDepth) {
+            this.waitTimes = waitTimes;
+            this.cycleDurations = cycleDurations;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+        }
+
+        /**
+         * Gets the distribution of the times visitors waited in the queue, in nanoseconds.
+         *
+         * @return the wait time histogram
+         */
+        public LatencyHistogram.Snapshot getWaitTimes() {
+            return waitTimes;
+        }
+
+        /**
+         * Gets the distribution of the ride cycle durations, in nanoseconds.
+         *
+         * @return the cycle duration histogram
+         */
+        public LatencyHistogram.Snapshot getCycleDurations() {
+            return cycleDurations;
+        }
+
+        /**
+         * Gets the depth of the waiting queue when it last changed.
+         *
+         * @return the number of visitors waiting
+         */
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Gets the largest depth the waiting queue has reached.
+         *
+         * @return the largest number of visitors waiting at once
+         */
+        public long getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("QueueDepth=%d, MaxQueueDepth=%d, WaitTimes=[%s], CycleDurations=[%s]",
+                    queueDepth, maxQueueDepth, waitTimes, cycleDurations);
+        }
+    }
+}
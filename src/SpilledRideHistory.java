@@ -0,0 +1,487 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SpilledRideHistory} class is the disk tier of a ride history that is too long to keep
+ * in memory. Older visitors are appended to a spill file in the CSV format of
+ * {@link RideHistoryCsv}, one segment at a time. Only the place of each segment in the file and
+ * small {@link BloomFilter}s of its names and ticket IDs stay in memory: one pair for the whole
+ * segment and one pair for every block of 1024 rows in it. Another pair covers the whole file,
+ * so a name or ticket ID that was never spilled is usually rejected by two filter probes,
+ * however many segments there are. Other lookups skip the segments and then the blocks whose
+ * filter does not match and read only the blocks that remain. The filters of the whole file are
+ * rebuilt twice as large from the file whenever they fill up.
+ *
+ * <p>An existing spill file can be reopened, in which case its segments and filters are rebuilt
+ * by reading the file once. The file is only emptied when the caller asks for it.
+ */
+public class SpilledRideHistory {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int NAME_FIELD = 0;
+    private static final int TICKET_FIELD = 3;
+    private static final int BLOCK_SIZE = 1024;
+    private static final int REOPENED_SEGMENT_BLOCKS = 64;
+    private static final int MIN_FILE_FILTER_SIZE = 1 << 16;
+
+    private final String filePath;
+    private final List<Segment> segments;
+    private long fileSize;
+    private long numberOfVisitors;
+    private Block fileFilter;
+    private byte[] readBuffer;
+
+    /**
+     * Constructor that opens a spill file, keeping the visitors already spilled to it.
+     *
+     * @param filePath the path to the spill file, which is created if it does not exist
+     * @throws IOException if the file cannot be created or read
+     * @throws NumberFormatException if the age of a spilled visitor is not a valid number
+     */
+    public SpilledRideHistory(String filePath) throws IOException {
+        this(filePath, false);
+    }
+
+    /**
+     * Constructor that opens a spill file and either keeps or discards the visitors already
+     * spilled to it. A row left incomplete at the end of the file, for example by a crash during
+     * a spill, is cut off.
+     *
+     * @param filePath the path to the spill file, which is created if it does not exist
+     * @param truncate {@code true} to empty the file, {@code false} to keep its visitors
+     * @throws IOException if the file cannot be created or read
+     * @throws NumberFormatException if the age of a spilled visitor is not a valid number
+     */
+    public SpilledRideHistory(String filePath, boolean truncate) throws IOException {
+        this.filePath = filePath;
+        this.segments = new ArrayList<>();
+        this.readBuffer = new byte[0];
+        FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE).close();
+        truncate(truncate ? 0 : Long.MAX_VALUE);
+    }
+
+    /**
+     * Appends a segment of visitors to the spill file.
+     *
+     * @param visitors the visitors to be spilled, in history order
+     * @throws IOException if the file cannot be written
+     */
+    public void spill(List<? extends Visitor> visitors) throws IOException {
+        if (visitors.isEmpty()) {
+            return;
+        }
+
+        Block segment = new Block(fileSize, visitors.size());
+        List<Block> blocks = new ArrayList<>();
+        for (int from = 0; from < visitors.size(); from += BLOCK_SIZE) {
+            List<? extends Visitor> rows = visitors.subList(from, Math.min(visitors.size(), from + BLOCK_SIZE));
+            Block block = new Block(fileSize, rows.size());
+            for (Visitor visitor : rows) {
+                block.add(visitor);
+                segment.add(visitor);
+            }
+            fileSize = RideHistoryCsv.append(filePath, rows.iterator());
+            block.end = fileSize;
+            blocks.add(block);
+        }
+        segment.end = fileSize;
+        segments.add(new Segment(segment, blocks.toArray(new Block[0])));
+        numberOfVisitors += visitors.size();
+
+        for (Visitor visitor : visitors) {
+            fileFilter.add(visitor);
+        }
+        if (fileFilter.names.isFull()) {
+            rebuildFileFilter();
+        }
+    }
+
+    /**
+     * Cuts the spill file back to the given size and rebuilds the segments and filters from the
+     * rows that remain. The size must be the end of a row, such as a value returned by
+     * {@link #getFileSize()} earlier.
+     *
+     * @param size the number of bytes to keep, which may be larger than the file
+     * @throws IOException if the file cannot be read or truncated
+     * @throws NumberFormatException if the age of a spilled visitor is not a valid number
+     */
+    public void truncate(long size) throws IOException {
+        segments.clear();
+        numberOfVisitors = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (size < channel.size()) {
+                channel.truncate(Math.max(0, size));
+            }
+            Reloader reloader = new Reloader();
+            long end = RideHistoryCsv.readLines(channel, false, reloader::accept);
+            reloader.finish();
+            if (end < channel.size()) {
+                channel.truncate(end);
+            }
+            fileSize = end;
+        }
+        rebuildFileFilter();
+    }
+
+    /**
+     * Forces the spilled visitors to disk, so that they survive a crash.
+     *
+     * @throws IOException if the file cannot be forced
+     */
+    public void force() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Checks whether a visitor with the given name has been spilled.
+     *
+     * @param name the name to be checked
+     * @return {@code true} if a spilled visitor has this name, otherwise {@code false}
+     * @throws IOException if the file cannot be read
+     */
+    public boolean containsName(String name) throws IOException {
+        return contains(NAME_FIELD, name);
+    }
+
+    /**
+     * Checks whether a visitor holding the given ticket ID has been spilled.
+     *
+     * @param ticketId the ticket ID to be checked
+     * @return {@code true} if a spilled visitor has this ticket, otherwise {@code false}
+     * @throws IOException if the file cannot be read
+     */
+    public boolean containsTicket(String ticketId) throws IOException {
+        return contains(TICKET_FIELD, ticketId);
+    }
+
+    /**
+     * Appends the visitors spilled from the given row on to another file in the same CSV format.
+     * The rows are copied from the spill file as they are, without parsing them.
+     *
+     * @param fromRow the number of spilled visitors to skip
+     * @param targetPath the path to the file to append to, which is created if it does not exist
+     * @return the size of the target file after appending
+     * @throws IOException if either file cannot be read or written
+     */
+    public long appendTo(long fromRow, String targetPath) throws IOException {
+        try (FileChannel source = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(Paths.get(targetPath), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long position = findRow(source, Math.max(0, fromRow));
+            while (position < fileSize) {
+                position += source.transferTo(position, fileSize - position, target);
+            }
+            return target.size();
+        }
+    }
+
+    /**
+     * Gets the number of visitors spilled to the file.
+     *
+     * @return the number of spilled visitors
+     */
+    public long getNumberOfVisitors() {
+        return numberOfVisitors;
+    }
+
+    /**
+     * Gets the number of segments spilled to the file.
+     *
+     * @return the number of segments
+     */
+    public int getNumberOfSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Gets the size of the spill file, which is the end of the last spilled row.
+     *
+     * @return the size of the spill file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the path to the spill file.
+     *
+     * @return the path to the spill file
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Checks the segments from the newest to the oldest for a row with the given value in a field.
+     */
+    private boolean contains(int field, String value) throws IOException {
+        if (value == null || segments.isEmpty() || !fileFilter.mightContain(field, value)) {
+            return false;
+        }
+
+        byte[] bytes = null;
+        FileChannel channel = null;
+        try {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment segment = segments.get(i);
+                if (!segment.summary.mightContain(field, value)) {
+                    continue;
+                }
+                for (int j = segment.blocks.length - 1; j >= 0; j--) {
+                    Block block = segment.blocks[j];
+                    if (!block.mightContain(field, value)) {
+                        continue;
+                    }
+                    if (channel == null) {
+                        bytes = value.getBytes(StandardCharsets.UTF_8);
+                        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                    }
+                    if (scan(channel, block, field, bytes)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Finds the position in the spill file where the given row starts, skipping whole segments
+     * and blocks by their row counts and reading only the block that holds the row.
+     */
+    private long findRow(FileChannel channel, long row) throws IOException {
+        if (row >= numberOfVisitors) {
+            return fileSize;
+        }
+
+        for (Segment segment : segments) {
+            if (row >= segment.summary.rows) {
+                row -= segment.summary.rows;
+                continue;
+            }
+            for (Block block : segment.blocks) {
+                if (row >= block.rows) {
+                    row -= block.rows;
+                    continue;
+                }
+                int length = read(channel, block);
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (readBuffer[i] == '\n') {
+                        if (!isBlank(readBuffer, lineStart, i) && row-- == 0) {
+                            return block.start + lineStart;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+            }
+        }
+        return fileSize;
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((bytes[i] & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the filters of the whole file for twice the number of spilled visitors by reading
+     * every row of the file.
+     */
+    private void rebuildFileFilter() throws IOException {
+        long expected = Math.max(MIN_FILE_FILTER_SIZE, numberOfVisitors * 2);
+        Block filter = new Block(0, (int) Math.min(Integer.MAX_VALUE, expected));
+        if (numberOfVisitors > 0) {
+            try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+                RideHistoryCsv.readLines(channel, false, (buffer, start, end) -> {
+                    Visitor visitor = RideHistoryCsv.parseLine(buffer, start, end);
+                    if (visitor != null) {
+                        filter.add(visitor);
+                    }
+                });
+            }
+        }
+        fileFilter = filter;
+    }
+
+    /**
+     * Reads one block and checks its rows for the given bytes in a field.
+     */
+    private boolean scan(FileChannel channel, Block block, int field, byte[] value) throws IOException {
+        int limit = read(channel, block);
+        byte[] bytes = readBuffer;
+        int lineStart = 0;
+        for (int i = 0; i <= limit; i++) {
+            if (i == limit || bytes[i] == '\n') {
+                if (fieldEquals(bytes, lineStart, i, field, value)) {
+                    return true;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads one block into the read buffer.
+     *
+     * @return the number of bytes read
+     */
+    private int read(FileChannel channel, Block block) throws IOException {
+        int length = (int) (block.end - block.start);
+        if (readBuffer.length < length) {
+            readBuffer = new byte[length];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(readBuffer, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, block.start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Checks whether a field of a line holds exactly the given bytes. Leading blanks of the line are
+     * skipped, as {@link RideHistoryCsv} does when it reads the line.
+     */
+    private static boolean fieldEquals(byte[] bytes, int start, int end, int field, byte[] value) {
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        for (int commas = 0; commas < field; start++) {
+            if (start >= end) {
+                return false;
+            }
+            if (bytes[start] == ',') {
+                commas++;
+            }
+        }
+
+        if (end - start < value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (bytes[start + i] != value[i]) {
+                return false;
+            }
+        }
+        int after = start + value.length;
+        return after == end || bytes[after] == ',';
+    }
+
+    /**
+     * Rebuilds the segments and filters of an existing spill file from its rows, one line at a
+     * time. The rows are grouped into blocks of the usual size and segments of a fixed number of
+     * blocks, since the sizes of the spills that wrote them are not kept in the file.
+     */
+    private final class Reloader {
+        private final List<Block> blocks = new ArrayList<>();
+        private long position;
+        private Block segment;
+        private Block block;
+
+        private void accept(ByteBuffer buffer, int start, int end) {
+            Visitor visitor = RideHistoryCsv.parseLine(buffer, start, end);
+            long lineStart = position;
+            position += end - start + 1;
+            if (visitor == null) {
+                return;
+            }
+
+            if (segment == null) {
+                segment = new Block(lineStart, BLOCK_SIZE * REOPENED_SEGMENT_BLOCKS);
+            }
+            if (block == null) {
+                block = new Block(lineStart, BLOCK_SIZE);
+            }
+            block.add(visitor);
+            segment.add(visitor);
+            numberOfVisitors++;
+            if (block.rows == BLOCK_SIZE) {
+                finishBlock();
+                if (blocks.size() == REOPENED_SEGMENT_BLOCKS) {
+                    finishSegment();
+                }
+            }
+        }
+
+        private void finish() {
+            if (block != null) {
+                finishBlock();
+            }
+            if (segment != null) {
+                finishSegment();
+            }
+        }
+
+        private void finishBlock() {
+            block.end = position;
+            blocks.add(block);
+            block = null;
+        }
+
+        private void finishSegment() {
+            segment.end = position;
+            segments.add(new Segment(segment, blocks.toArray(new Block[0])));
+            blocks.clear();
+            segment = null;
+        }
+    }
+
+    /**
+     * A segment spilled in one step, with filters covering all of its blocks.
+     */
+    private static final class Segment {
+        private final Block summary;
+        private final Block[] blocks;
+
+        private Segment(Block summary, Block[] blocks) {
+            this.summary = summary;
+            this.blocks = blocks;
+        }
+    }
+
+    /**
+     * The place of a range of rows in the spill file and the filters of their names and ticket IDs.
+     */
+    private static final class Block {
+        private final long start;
+        private long end;
+        private final BloomFilter names;
+        private final BloomFilter tickets;
+        private int rows;
+
+        private Block(long start, int expectedRows) {
+            this.start = start;
+            this.names = new BloomFilter(expectedRows, FALSE_POSITIVE_RATE);
+            this.tickets = new BloomFilter(expectedRows, FALSE_POSITIVE_RATE);
+        }
+
+        private void add(Visitor visitor) {
+            names.add(String.valueOf(visitor.getName()));
+            tickets.add(String.valueOf(visitor.getTicketId()));
+            rows++;
+        }
+
+        private boolean mightContain(int field, String value) {
+            return (field == NAME_FIELD ? names : tickets).mightContain(value);
+        }
+    }
+}
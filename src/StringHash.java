@@ -0,0 +1,60 @@
+/**
+ * The {@code StringHash} class computes 64-bit hashes of strings for probabilistic structures
+ * such as {@link BloomFilter} and {@link HyperLogLog}. The cached {@link String#hashCode()} has
+ * only 32 bits, so strings with equal hash codes, such as {@code "Aa"} and {@code "BB"}, would
+ * always be mistaken for each other, whatever false-positive rate a filter is sized for, and a
+ * sketch would count them as one guest. This hash reads the characters four at a time, mixes
+ * each block into the state, and finishes with the MurmurHash3 finalizer so that every bit of
+ * the result depends on every character.
+ */
+public final class StringHash {
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private StringHash() {
+    }
+
+    /**
+     * Computes the 64-bit hash of a string.
+     *
+     * @param value the string to be hashed
+     * @return the hash of the string
+     */
+    public static long hash64(String value) {
+        int length = value.length();
+        long hash = length * 0x9E3779B97F4A7C15L;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long block = value.charAt(i) | (long) value.charAt(i + 1) << 16
+                    | (long) value.charAt(i + 2) << 32 | (long) value.charAt(i + 3) << 48;
+            hash = mix(hash, block);
+        }
+        if (i < length) {
+            long block = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                block |= (long) value.charAt(i) << shift;
+            }
+            hash = mix(hash, block);
+        }
+        return finish(hash);
+    }
+
+    /**
+     * Mixes a block of four characters into the hash. Both multiplications are by odd constants,
+     * so different blocks always give different states.
+     */
+    private static long mix(long hash, long block) {
+        return Long.rotateLeft(hash ^ (block * C1), 31) * C2;
+    }
+
+    /**
+     * Spreads every bit of the state over the whole hash.
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
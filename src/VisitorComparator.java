@@ -1,4 +1,7 @@
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
 
 /**
  * The {@code VisitorComparator} class implements the {@link Comparator} interface
@@ -6,6 +9,18 @@ import java.util.Comparator;
  * and if they are equal, then by the name of the visitor.
  */
 public class VisitorComparator implements Comparator<Visitor> {
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+    private static final String TICKET_PREFIX = "ticket";
+    private static final int MAX_TICKET_DIGITS = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_TICKET_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
     @Override
     public int compare(Visitor v1, Visitor v2) {
         int ticketComparison = v1.getTicketId().compareToIgnoreCase(v2.getTicketId());
@@ -14,4 +29,141 @@ public class VisitorComparator implements Comparator<Visitor> {
         }
         return v1.getName().compareTo(v2.getName());
     }
+
+    /**
+     * Sorts a list of visitors into the same order as {@link #compare(Visitor, Visitor)}, but
+     * builds a sort key for each visitor once instead of case-folding the ticket IDs on every
+     * comparison. Ticket IDs of the form {@code TICKET<digits>} are keyed by their number. Large
+     * lists are sorted with {@link Arrays#parallelSort(Object[], Comparator)}. Like
+     * {@link java.util.Collections#sort(List, Comparator)}, the sort is stable.
+     *
+     * @param visitors the list of visitors to be sorted
+     */
+    public static void sort(List<Visitor> visitors) {
+        SortKey[] keys = new SortKey[visitors.size()];
+        int i = 0;
+        for (Visitor visitor : visitors) {
+            keys[i++] = new SortKey(visitor);
+        }
+
+        if (keys.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(keys, SortKey::compareTo);
+        } else {
+            Arrays.sort(keys, SortKey::compareTo);
+        }
+
+        ListIterator<Visitor> it = visitors.listIterator();
+        for (SortKey key : keys) {
+            it.next();
+            it.set(key.visitor);
+        }
+    }
+
+    /**
+     * The sort key of a visitor. A ticket ID made of the prefix {@code TICKET} in any case and up
+     * to 18 digits is kept as its number and digit count; any other ticket ID is kept case-folded.
+     */
+    private static final class SortKey {
+        private final Visitor visitor;
+        private final String ticketId;
+        private final String name;
+        private final long number;
+        private final int digits;
+        private String folded;
+
+        private SortKey(Visitor visitor) {
+            this.visitor = visitor;
+            this.ticketId = visitor.getTicketId();
+            this.name = visitor.getName();
+            this.digits = countTicketDigits(ticketId);
+            long value = 0;
+            for (int i = ticketId.length() - digits; i < ticketId.length(); i++) {
+                value = value * 10 + (ticketId.charAt(i) - '0');
+            }
+            this.number = value;
+            this.folded = digits > 0 ? null : fold(ticketId);
+        }
+
+        private int compareTo(SortKey other) {
+            int ticketComparison;
+            if (digits > 0 && other.digits > 0) {
+                ticketComparison = compareDigits(other);
+            } else {
+                String mine = folded();
+                String theirs = other.folded();
+                ticketComparison = mine == null || theirs == null
+                        ? ticketId.compareToIgnoreCase(other.ticketId)
+                        : mine.compareTo(theirs);
+            }
+
+            if (ticketComparison != 0) {
+                return ticketComparison;
+            }
+            return name.compareTo(other.name);
+        }
+
+        /**
+         * Compares the digit strings of two numeric ticket IDs as strings, using their numbers:
+         * the common leading digits are compared as numbers, and on a tie the shorter one is first.
+         */
+        private int compareDigits(SortKey other) {
+            int common = Math.min(digits, other.digits);
+            long leading = number / POWERS_OF_TEN[digits - common];
+            long otherLeading = other.number / POWERS_OF_TEN[other.digits - common];
+            if (leading != otherLeading) {
+                return leading < otherLeading ? -1 : 1;
+            }
+            return digits - other.digits;
+        }
+
+        /**
+         * Gets the case-folded ticket ID, or {@code null} if it contains surrogate characters,
+         * in which case it is compared with {@link String#compareToIgnoreCase(String)}.
+         */
+        private String folded() {
+            if (folded == null && digits > 0) {
+                folded = TICKET_PREFIX + ticketId.substring(TICKET_PREFIX.length());
+            }
+            return folded;
+        }
+
+        /**
+         * Counts the digits of a ticket ID of the form {@code TICKET<digits>}.
+         *
+         * @return the number of digits, or zero if the ticket ID does not have that form
+         */
+        private static int countTicketDigits(String ticketId) {
+            int prefix = TICKET_PREFIX.length();
+            int digits = ticketId.length() - prefix;
+            if (digits <= 0 || digits > MAX_TICKET_DIGITS
+                    || !ticketId.regionMatches(true, 0, TICKET_PREFIX, 0, prefix)) {
+                return 0;
+            }
+            for (int i = prefix; i < ticketId.length(); i++) {
+                char c = ticketId.charAt(i);
+                if (c < '0' || c > '9') {
+                    return 0;
+                }
+            }
+            return digits;
+        }
+
+        /**
+         * Case-folds a string the way {@link String#compareToIgnoreCase(String)} compares
+         * characters, so that comparing folded strings gives the same order.
+         *
+         * @return the folded string, or {@code null} if it contains surrogate characters
+         */
+        private static String fold(String value) {
+            char[] chars = new char[value.length()];
+            for (int i = 0; i < chars.length; i++) {
+                char c = value.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    return null;
+                }
+                chars[i] = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            return new String(chars);
+        }
+    }
 }
@@ -0,0 +1,155 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code VisitorInterner} class lets rides share visitor objects instead of keeping a copy
+ * for every row of their history. A park has only a few dozen attractions, so every favorite
+ * attraction is replaced by one canonical string, and a visitor who comes back with the same
+ * ticket ID and the same details is replaced by the {@link Visitor} object seen first for that
+ * ticket. One interner can be shared by all rides of a park and is safe to use from several
+ * threads.
+ *
+ * <p>Shared visitors are the same object in every history and queue that holds them, so they
+ * should not be changed with their setters after they are interned.
+ *
+ * <p>The interner holds shared visitors weakly. Once no history or queue holds a visitor any
+ * more, for example because a ride spilled it to disk, the visitor can be garbage collected and
+ * its ticket ID is forgotten, so the interner does not keep the heap growing with the history.
+ */
+public class VisitorInterner {
+    private final ConcurrentHashMap<String, String> attractions;
+    private final ConcurrentHashMap<String, SharedVisitor> visitors;
+    private final ReferenceQueue<Visitor> collected;
+    private final LongAdder sharedVisitors;
+
+    /**
+     * Default constructor that creates an empty interner.
+     */
+    public VisitorInterner() {
+        this.attractions = new ConcurrentHashMap<>();
+        this.visitors = new ConcurrentHashMap<>();
+        this.collected = new ReferenceQueue<>();
+        this.sharedVisitors = new LongAdder();
+    }
+
+    /**
+     * Gets the canonical instance of an attraction name.
+     *
+     * @param attraction the attraction name
+     * @return the canonical string equal to the attraction name, or {@code null} if it is {@code null}
+     */
+    public String internAttraction(String attraction) {
+        if (attraction == null) {
+            return null;
+        }
+
+        String canonical = attractions.putIfAbsent(attraction, attraction);
+        return canonical != null ? canonical : attraction;
+    }
+
+    /**
+     * Gets the shared visitor for a visitor. If a visitor with the same ticket ID and the same
+     * name, age, phone number and favorite attraction has been interned before, that visitor is
+     * returned. Otherwise a visitor with the canonical instance of the favorite attraction is
+     * returned, which becomes the shared visitor of its ticket ID if there is none yet or the
+     * previous one has been collected: the given visitor if it already holds the canonical
+     * instance, or else a copy of it. The given visitor is never changed.
+     *
+     * @param visitor the visitor to be interned
+     * @return the shared visitor, or the given visitor if it cannot be shared
+     */
+    public Visitor intern(Visitor visitor) {
+        if (visitor == null || visitor.getTicketId() == null) {
+            return visitor;
+        }
+
+        removeCollected();
+        SharedVisitor entry = visitors.get(visitor.getTicketId());
+        Visitor shared = entry != null ? entry.get() : null;
+        if (shared != null && isSameVisitor(shared, visitor)) {
+            sharedVisitors.increment();
+            return shared;
+        }
+
+        String attraction = internAttraction(visitor.getFavoriteAttraction());
+        if (attraction != visitor.getFavoriteAttraction()) {
+            visitor = new Visitor(visitor.getName(), visitor.getAge(), visitor.getPhoneNumber(),
+                    visitor.getTicketId(), attraction);
+        }
+        if (shared == null) {
+            Visitor candidate = visitor;
+            SharedVisitor current = visitors.compute(candidate.getTicketId(), (ticketId, previous) ->
+                    previous != null && previous.get() != null ? previous : new SharedVisitor(candidate, collected));
+            shared = current.get();
+            if (shared != null && shared != candidate && isSameVisitor(shared, candidate)) {
+                sharedVisitors.increment();
+                return shared;
+            }
+        }
+        return visitor;
+    }
+
+    /**
+     * Gets the number of distinct attraction names seen.
+     *
+     * @return the number of canonical attraction names
+     */
+    public int getNumberOfAttractions() {
+        return attractions.size();
+    }
+
+    /**
+     * Gets the number of ticket IDs that have a shared visitor. Visitors that have been garbage
+     * collected are not counted once the collector has reported them.
+     *
+     * @return the number of shared visitors
+     */
+    public int getNumberOfVisitors() {
+        removeCollected();
+        return visitors.size();
+    }
+
+    /**
+     * Gets the number of times a visitor was replaced by a shared visitor.
+     *
+     * @return the number of visitors that were deduplicated
+     */
+    public long getSharedCount() {
+        return sharedVisitors.sum();
+    }
+
+    /**
+     * Forgets the ticket IDs whose shared visitors have been garbage collected.
+     */
+    private void removeCollected() {
+        Reference<? extends Visitor> reference;
+        while ((reference = collected.poll()) != null) {
+            SharedVisitor entry = (SharedVisitor) reference;
+            visitors.remove(entry.ticketId, entry);
+        }
+    }
+
+    private static boolean isSameVisitor(Visitor shared, Visitor visitor) {
+        return shared.getAge() == visitor.getAge()
+                && Objects.equals(shared.getName(), visitor.getName())
+                && Objects.equals(shared.getPhoneNumber(), visitor.getPhoneNumber())
+                && Objects.equals(shared.getFavoriteAttraction(), visitor.getFavoriteAttraction());
+    }
+
+    /**
+     * A weak reference to a shared visitor that remembers its ticket ID, so that the entry can be
+     * removed after the visitor has been collected.
+     */
+    private static final class SharedVisitor extends WeakReference<Visitor> {
+        private final String ticketId;
+
+        private SharedVisitor(Visitor visitor, ReferenceQueue<Visitor> queue) {
+            super(visitor, queue);
+            this.ticketId = visitor.getTicketId();
+        }
+    }
+}
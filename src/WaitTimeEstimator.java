@@ -0,0 +1,344 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code WaitTimeEstimator} class estimates how long a guest will wait for a ride. It listens
+ * to the rides of the park and tracks, for every ride, the time between cycles and the number of
+ * riders per cycle as exponentially weighted moving averages, together with the length of the
+ * waiting queue. The wait for any place in the queue is then worked out in constant time from
+ * these few numbers.
+ *
+ * <p>Time between cycles only counts while visitors are waiting: when the queue has been empty,
+ * the next interval starts when a visitor joins the queue. The riders per cycle only follow
+ * cycles that left visitors waiting, which show what a full cycle carries; a cycle that emptied
+ * the queue can only raise the average.
+ *
+ * <p>For dashboards and apps that ask for every ride at once, {@link #getSnapshot()} returns an
+ * immutable snapshot of all rides that is rebuilt at most once per refresh interval, so any
+ * number of readers share the same snapshot. The estimator is safe to use from several threads.
+ */
+public class WaitTimeEstimator implements RideListener {
+    /**
+     * The weight of the newest cycle in the moving averages used by the default constructor.
+     */
+    public static final double DEFAULT_SMOOTHING = 0.2;
+
+    /**
+     * The longest age of a snapshot in milliseconds used by the default constructor.
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000;
+
+    private final LongSupplier clock;
+    private final double smoothing;
+    private final long refreshInterval;
+    private final ConcurrentHashMap<RideInterface, RideRate> rates;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Default constructor that measures time with the system clock in milliseconds.
+     */
+    public WaitTimeEstimator() {
+        this(System::currentTimeMillis, DEFAULT_SMOOTHING, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Constructor that measures time with the given clock, for example the clock of a
+     * {@link ParkSimulation}.
+     *
+     * @param clock the clock, in milliseconds
+     * @param smoothing the weight of the newest cycle in the moving averages, between 0 and 1
+     * @param refreshInterval the longest age of a snapshot in milliseconds
+     * @throws IllegalArgumentException if the smoothing is not between 0 and 1 or the refresh
+     *                                  interval is negative
+     */
+    public WaitTimeEstimator(LongSupplier clock, double smoothing, long refreshInterval) {
+        if (!(smoothing > 0 && smoothing <= 1) || refreshInterval < 0) {
+            throw new IllegalArgumentException("Invalid smoothing " + smoothing
+                    + " or refresh interval " + refreshInterval);
+        }
+
+        this.clock = clock;
+        this.smoothing = smoothing;
+        this.refreshInterval = refreshInterval;
+        this.rates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Counts a visitor joining the queue of a ride.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor added to the queue
+     */
+    @Override
+    public void onVisitorAddedToQueue(RideInterface ride, Visitor visitor) {
+        rate(ride).visitorJoined(clock.getAsLong());
+    }
+
+    /**
+     * Counts a visitor leaving the queue of a ride.
+     *
+     * @param ride the ride that raised the event
+     * @param visitor the visitor removed from the queue
+     */
+    @Override
+    public void onVisitorRemovedFromQueue(RideInterface ride, Visitor visitor) {
+        rate(ride).visitorLeft();
+    }
+
+    /**
+     * Updates the moving averages of a ride with a completed cycle.
+     *
+     * @param ride the ride that raised the event
+     * @param riders the number of visitors who took the ride in this cycle
+     */
+    @Override
+    public void onCycleCompleted(RideInterface ride, int riders) {
+        rate(ride).cycleCompleted(clock.getAsLong(), riders, smoothing);
+    }
+
+    /**
+     * Estimates the wait for a place in the queue of a ride: the time until the next cycle, plus
+     * one cycle interval for every full cycle of riders ahead of that place.
+     *
+     * @param ride the ride
+     * @param position the place in the queue, where 1 is the front of the queue
+     * @return the estimated wait in milliseconds, or -1 if the ride has not completed enough
+     *         cycles to estimate it
+     */
+    public long estimateWait(RideInterface ride, int position) {
+        RideRate rate = rates.get(ride);
+        return rate != null ? rate.estimateWait(Math.max(1, position), clock.getAsLong()) : -1;
+    }
+
+    /**
+     * Estimates the wait for a visitor who joins the queue of a ride now.
+     *
+     * @param ride the ride
+     * @return the estimated wait in milliseconds, or -1 if it cannot be estimated yet
+     */
+    public long estimateWaitToJoin(RideInterface ride) {
+        RideRate rate = rates.get(ride);
+        return rate != null ? rate.estimateWait(rate.queueLength.get() + 1, clock.getAsLong()) : -1;
+    }
+
+    /**
+     * Gets a snapshot of the estimates for every ride. The snapshot is shared by all callers and
+     * rebuilt when it is older than the refresh interval.
+     *
+     * @return the current snapshot
+     */
+    public Snapshot getSnapshot() {
+        long now = clock.getAsLong();
+        Snapshot current = snapshot;
+        if (current != null && now - current.createdAt < refreshInterval) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || now - current.createdAt >= refreshInterval) {
+                current = new Snapshot(now, rates);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private RideRate rate(RideInterface ride) {
+        RideRate rate = rates.get(ride);
+        return rate != null ? rate : rates.computeIfAbsent(ride, RideRate::new);
+    }
+
+    /**
+     * The estimate for one ride at the time a snapshot was taken.
+     */
+    public static final class Estimate {
+        private final String rideName;
+        private final int queueLength;
+        private final double ridersPerCycle;
+        private final double cycleInterval;
+        private final long waitToJoin;
+
+        private Estimate(String rideName, int queueLength, double ridersPerCycle, double cycleInterval,
+                         long waitToJoin) {
+            this.rideName = rideName;
+            this.queueLength = queueLength;
+            this.ridersPerCycle = ridersPerCycle;
+            this.cycleInterval = cycleInterval;
+            this.waitToJoin = waitToJoin;
+        }
+
+        /**
+         * Gets the name of the ride.
+         *
+         * @return the name of the ride
+         */
+        public String getRideName() {
+            return rideName;
+        }
+
+        /**
+         * Gets the number of visitors waiting.
+         *
+         * @return the length of the waiting queue
+         */
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        /**
+         * Gets the moving average of riders per cycle.
+         *
+         * @return the average number of riders per cycle, or 0 if no cycle has completed
+         */
+        public double getRidersPerCycle() {
+            return ridersPerCycle;
+        }
+
+        /**
+         * Gets the moving average of the time between cycles.
+         *
+         * @return the average cycle interval in milliseconds, or 0 if it is not known yet
+         */
+        public double getCycleInterval() {
+            return cycleInterval;
+        }
+
+        /**
+         * Gets the estimated wait for a visitor joining the queue.
+         *
+         * @return the estimated wait in milliseconds, or -1 if it cannot be estimated yet
+         */
+        public long getWaitToJoin() {
+            return waitToJoin;
+        }
+
+        @Override
+        public String toString() {
+            return rideName + ": " + queueLength + " waiting, "
+                    + (waitToJoin < 0 ? "wait unknown" : "wait " + (waitToJoin / 1000) + " s");
+        }
+    }
+
+    /**
+     * The estimates for every ride at one point in time.
+     */
+    public static final class Snapshot {
+        private final long createdAt;
+        private final List<Estimate> estimates;
+        private final Map<String, Estimate> byRideName;
+
+        private Snapshot(long createdAt, Map<RideInterface, RideRate> rates) {
+            List<Estimate> all = new ArrayList<>(rates.size());
+            Map<String, Estimate> byName = new HashMap<>();
+            for (RideRate rate : rates.values()) {
+                Estimate estimate = rate.toEstimate(createdAt);
+                all.add(estimate);
+                byName.put(estimate.getRideName(), estimate);
+            }
+            this.createdAt = createdAt;
+            this.estimates = Collections.unmodifiableList(all);
+            this.byRideName = byName;
+        }
+
+        /**
+         * Gets the time the snapshot was taken.
+         *
+         * @return the time of the estimator's clock when the snapshot was taken
+         */
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * Gets the estimates of every ride.
+         *
+         * @return the estimates, one per ride
+         */
+        public List<Estimate> getEstimates() {
+            return estimates;
+        }
+
+        /**
+         * Gets the estimate of a ride by its name. If several rides have the same name, the
+         * estimate of one of them is returned.
+         *
+         * @param rideName the name of the ride
+         * @return the estimate of the ride, or {@code null} if there is no ride with this name
+         */
+        public Estimate getEstimate(String rideName) {
+            return byRideName.get(rideName);
+        }
+    }
+
+    /**
+     * The moving averages and queue length of one ride. The averages are updated under the lock
+     * of the ride's rate and read without it.
+     */
+    private static final class RideRate {
+        private final RideInterface ride;
+        private final AtomicInteger queueLength;
+        private volatile double ridersPerCycle;
+        private volatile double cycleInterval;
+        private volatile long intervalStart = -1;
+
+        private RideRate(RideInterface ride) {
+            this.ride = ride;
+            this.queueLength = new AtomicInteger();
+        }
+
+        private void visitorJoined(long now) {
+            if (queueLength.getAndIncrement() == 0) {
+                synchronized (this) {
+                    // The ride was idle, so the time since the last cycle is not cycle time.
+                    if (intervalStart >= 0 && intervalStart < now) {
+                        intervalStart = now;
+                    }
+                }
+            }
+        }
+
+        private void visitorLeft() {
+            queueLength.updateAndGet(length -> Math.max(0, length - 1));
+        }
+
+        private synchronized void cycleCompleted(long now, int riders, double smoothing) {
+            if (intervalStart >= 0) {
+                double interval = now - intervalStart;
+                cycleInterval = cycleInterval == 0 ? interval : cycleInterval + smoothing * (interval - cycleInterval);
+            }
+            intervalStart = now;
+
+            if (queueLength.get() > 0 || ridersPerCycle == 0) {
+                ridersPerCycle = ridersPerCycle == 0 ? riders : ridersPerCycle + smoothing * (riders - ridersPerCycle);
+            } else if (riders > ridersPerCycle) {
+                ridersPerCycle += smoothing * (riders - ridersPerCycle);
+            }
+        }
+
+        private long estimateWait(int position, long now) {
+            double riders = ridersPerCycle;
+            double interval = cycleInterval;
+            long start = intervalStart;
+            if (riders <= 0 || interval <= 0) {
+                return -1;
+            }
+
+            long cyclesAhead = (long) Math.ceil(position / riders) - 1;
+            double untilNextCycle = Math.max(0, start + interval - now);
+            return Math.round(untilNextCycle + cyclesAhead * interval);
+        }
+
+        private Estimate toEstimate(long now) {
+            int waiting = queueLength.get();
+            return new Estimate(ride.getRideName(), waiting, ridersPerCycle, cycleInterval,
+                    estimateWait(waiting + 1, now));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Stress tests for {@link ConcurrentRide}: several turnstile threads add visitors to the queue
+ * while one operator thread runs cycles, and every visitor must end up in the history exactly
+ * once, with no cycle boarding more than the maximum number of riders.
+ */
+class ConcurrentRideTest {
+    private static final int PRODUCERS = 4;
+    private static final int VISITORS_PER_PRODUCER = 25_000;
+    private static final int MAX_RIDER = 32;
+
+    /**
+     * Producers wait for a free place in a bounded queue, so every visitor is accepted and must
+     * be served exactly once.
+     */
+    @Test
+    @Timeout(60)
+    void producersAndOperatorLoseNoVisitors() throws Exception {
+        ConcurrentRide ride = new ConcurrentRide("Roller Coaster", 1024, operator());
+        ride.setMaxRider(MAX_RIDER);
+        CycleCounter counter = new CycleCounter();
+        ride.addRideListener(counter);
+
+        int total = PRODUCERS * VISITORS_PER_PRODUCER;
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> producers = startProducers(producer -> {
+            for (int i = 0; i < VISITORS_PER_PRODUCER; i++) {
+                if (ride.offerVisitor(visitor(producer, i), 10, TimeUnit.SECONDS)) {
+                    accepted.incrementAndGet();
+                }
+            }
+        });
+        runOperator(ride, counter, producers, total);
+
+        assertEquals(total, accepted.get());
+        assertHistoryHoldsEachVisitorOnce(ride, total);
+        assertEquals(total, counter.riders.get());
+        assertTrue(counter.maxRiders.get() <= MAX_RIDER, "cycle boarded " + counter.maxRiders.get());
+        assertEquals(0, ride.getRejectedVisitors());
+    }
+
+    /**
+     * Producers are turned away from a full queue, so the served visitors must be exactly the
+     * accepted ones.
+     */
+    @Test
+    @Timeout(60)
+    void rejectedVisitorsAreNeitherServedNorLost() throws Exception {
+        ConcurrentRide ride = new ConcurrentRide("Carousel", 64, operator());
+        ride.setMaxRider(MAX_RIDER);
+        CycleCounter counter = new CycleCounter();
+        ride.addRideListener(counter);
+
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> producers = startProducers(producer -> {
+            for (int i = 0; i < VISITORS_PER_PRODUCER; i++) {
+                if (ride.offerVisitor(visitor(producer, i))) {
+                    accepted.incrementAndGet();
+                }
+            }
+        });
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        runOperator(ride, counter, Collections.emptyList(), accepted.get());
+
+        assertEquals(PRODUCERS * VISITORS_PER_PRODUCER, accepted.get() + ride.getRejectedVisitors());
+        assertHistoryHoldsEachVisitorOnce(ride, accepted.get());
+        assertTrue(counter.maxRiders.get() <= MAX_RIDER, "cycle boarded " + counter.maxRiders.get());
+    }
+
+    /**
+     * Starts one thread per producer, all released at the same moment.
+     */
+    private static List<Thread> startProducers(Producer body) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(producer);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "turnstile-" + p);
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+        return producers;
+    }
+
+    /**
+     * Runs cycles on the calling thread until the expected number of riders has been served,
+     * then waits for the producers to finish.
+     */
+    private static void runOperator(ConcurrentRide ride, CycleCounter counter, List<Thread> producers,
+                                    int expectedRiders) throws InterruptedException {
+        while (counter.riders.get() < expectedRiders) {
+            ride.runOneCycle();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    private static void assertHistoryHoldsEachVisitorOnce(ConcurrentRide ride, int expected) {
+        List<Visitor> history = ride.getVisitors();
+        assertEquals(expected, history.size());
+        Set<String> tickets = new HashSet<>();
+        for (Visitor visitor : history) {
+            assertTrue(tickets.add(visitor.getTicketId()), "served twice: " + visitor.getTicketId());
+        }
+    }
+
+    private static Employee operator() {
+        return new Employee("Operator", 30, "555-000-0000", 1000.0, true);
+    }
+
+    private static Visitor visitor(int producer, int index) {
+        return new Visitor("Guest " + producer + "-" + index, 30, "555-111-2222",
+                "TICKET" + producer + "-" + index, "Carousel");
+    }
+
+    /**
+     * The work of one producer thread.
+     */
+    private interface Producer {
+        void run(int producer) throws InterruptedException;
+    }
+
+    /**
+     * Counts the riders of completed cycles and remembers the largest cycle.
+     */
+    private static final class CycleCounter implements RideListener {
+        private final AtomicLong riders = new AtomicLong();
+        private final AtomicInteger maxRiders = new AtomicInteger();
+
+        @Override
+        public void onCycleCompleted(RideInterface ride, int riders) {
+            this.riders.addAndGet(riders);
+            this.maxRiders.accumulateAndGet(riders, Math::max);
+        }
+    }
+}